@@ -0,0 +1,62 @@
+package uk.ac.ebi.fgpt.owl2json.benchmark;
+
+import org.semanticweb.owlapi.model.IRI;
+import uk.ac.ebi.fgpt.owl2json.AssertedOntologyLoader;
+import uk.ac.ebi.fgpt.owl2json.OntologyLoader;
+
+import java.io.File;
+import java.net.URI;
+
+/**
+ * Creates the ontologies used by the benchmarks.  Each is a {@link SyntheticOntologyGenerator.Shape#BALANCED} tree of
+ * classes with a fixed fan-out, in which a proportion of classes also have a second parent, so the hierarchy is a DAG as
+ * in most real ontologies.  Every class has a label and a synonym.  Ontologies are generated from a fixed seed, so
+ * benchmarks of the same size always use the same ontology.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class BenchmarkOntologies {
+    public static final URI ONTOLOGY_URI = URI.create("http://www.ebi.ac.uk/fgpt/owl2json/benchmark");
+    public static final URI SYNONYM_URI = URI.create("http://www.ebi.ac.uk/efo/alternative_term");
+
+    /**
+     * Writes an ontology with the given number of classes to a temporary file, as RDF/XML
+     *
+     * @param classes the number of classes in the ontology
+     * @return the file the ontology was written to, deleted on exit
+     * @throws Exception if the ontology could not be written
+     */
+    public static File createOntologyFile(int classes) throws Exception {
+        File ontologyFile = File.createTempFile("owl2json-benchmark-" + classes + "-", ".owl");
+        ontologyFile.deleteOnExit();
+        new SyntheticOntologyGenerator(SyntheticOntologyGenerator.Shape.BALANCED).write(classes, ontologyFile);
+        return ontologyFile;
+    }
+
+    /**
+     * Creates and initializes an asserted loader for the given ontology file
+     *
+     * @param ontologyFile the file to load, created by {@link #createOntologyFile(int)}
+     * @return the initialized loader
+     * @throws Exception if the ontology could not be loaded
+     */
+    public static OntologyLoader loadOntology(File ontologyFile) throws Exception {
+        AssertedOntologyLoader loader = new AssertedOntologyLoader();
+        loader.setOntologyURI(ONTOLOGY_URI);
+        loader.setOntologyFile(ontologyFile);
+        loader.setSynonymURI(SYNONYM_URI);
+        loader.init();
+        return loader;
+    }
+
+    /**
+     * Returns the IRI of the class with the given number in the benchmark ontologies
+     *
+     * @param i the number of the class
+     * @return the class IRI
+     */
+    public static IRI getClassIRI(int i) {
+        return IRI.create(ONTOLOGY_URI + "#C" + i);
+    }
+}
@@ -0,0 +1,37 @@
+package uk.ac.ebi.fgpt.owl2json.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the owl2json benchmarks.  Takes the same arguments as the standard JMH runner (e.g. a benchmark name pattern, or
+ * '-p classes=1000000' to change the size of the benchmark ontologies), but always adds the GC profiler, so the
+ * allocation rate of every benchmark is reported with its timings.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build();
+        Runner runner = new Runner(options);
+        if (commandLineOptions.shouldList()) {
+            runner.list();
+        }
+        else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.ebi.fgpt.owl2json.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.fgpt.owl2json.OntologyHierarchyBuilder;
+import uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNode;
+import uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeCounter;
+import uk.ac.ebi.fgpt.owl2json.TreeSizeNodeCounter;
+import uk.ac.ebi.fgpt.owl2json.ZoomaNodeCounter;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks counting a built hierarchy with each node counter, both one node at a time (through {@link
+ * OntologyHierarchyNodeCounter#count(OntologyHierarchyNode)}) and in bulk.  ZOOMA is replaced by a local {@link
+ * ZoomaFixture}, and counts are fetched once, in setup, so only counting is measured.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CounterBenchmark {
+    @Param({"10000", "100000"})
+    private int classes;
+
+    private OntologyHierarchyNode hierarchy;
+    private ZoomaFixture zoomaFixture;
+
+    private TreeSizeNodeCounter treeSizeCounter;
+    private ZoomaNodeCounter zoomaCounter;
+
+    @Setup
+    public void buildHierarchy() throws Exception {
+        hierarchy = OntologyHierarchyBuilder.buildHierarchy(
+                BenchmarkOntologies.loadOntology(BenchmarkOntologies.createOntologyFile(classes)),
+                new TreeSizeNodeCounter());
+        zoomaFixture = new ZoomaFixture(classes);
+        treeSizeCounter = new TreeSizeNodeCounter();
+        zoomaCounter = new ZoomaNodeCounter(zoomaFixture.getLocation(),
+                                            URI.create("http://www.ebi.ac.uk/fgpt/owl2json/benchmark/datasource"),
+                                            null);
+    }
+
+    @TearDown
+    public void stopZoomaFixture() {
+        zoomaFixture.stop();
+    }
+
+    @Benchmark
+    public int treeSizeCount() {
+        return OntologyHierarchyBuilder.countHierarchy(hierarchy, perNode(treeSizeCounter));
+    }
+
+    @Benchmark
+    public int treeSizeCountAll() {
+        return OntologyHierarchyBuilder.countHierarchy(hierarchy, treeSizeCounter);
+    }
+
+    @Benchmark
+    public int zoomaCount() {
+        return OntologyHierarchyBuilder.countHierarchy(hierarchy, perNode(zoomaCounter));
+    }
+
+    @Benchmark
+    public int zoomaCountAll() {
+        return OntologyHierarchyBuilder.countHierarchy(hierarchy, zoomaCounter);
+    }
+
+    /**
+     * Hides any bulk counting support of the given counter, so nodes are counted one at a time
+     */
+    private static OntologyHierarchyNodeCounter perNode(final OntologyHierarchyNodeCounter counter) {
+        return new OntologyHierarchyNodeCounter() {
+            @Override public int count(OntologyHierarchyNode node) {
+                return counter.count(node);
+            }
+        };
+    }
+}
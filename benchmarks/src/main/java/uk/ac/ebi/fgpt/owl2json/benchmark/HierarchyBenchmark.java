@@ -0,0 +1,57 @@
+package uk.ac.ebi.fgpt.owl2json.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.fgpt.owl2json.OntologyHierarchyBuilder;
+import uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNode;
+import uk.ac.ebi.fgpt.owl2json.OntologyLoader;
+import uk.ac.ebi.fgpt.owl2json.TreeSizeNodeCounter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks generating the hierarchy of a loaded ontology, including counting, pruning and grouping, at a range of
+ * depth and minimum size settings.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HierarchyBenchmark {
+    @Param({"10000", "100000"})
+    private int classes;
+
+    @Param({"-1", "3"})
+    private int maxDepth;
+
+    @Param({"-1", "10"})
+    private int minSize;
+
+    private OntologyLoader loader;
+
+    @Setup
+    public void loadOntology() throws Exception {
+        loader = BenchmarkOntologies.loadOntology(BenchmarkOntologies.createOntologyFile(classes));
+        // build the class index up front, so it isn't part of the first measurement
+        loader.getOntologyClassIndex();
+    }
+
+    @Benchmark
+    public OntologyHierarchyNode generateHierarchy() {
+        return OntologyHierarchyBuilder.generateHierarchy(loader, new TreeSizeNodeCounter(), maxDepth, minSize);
+    }
+}
@@ -0,0 +1,89 @@
+package uk.ac.ebi.fgpt.owl2json.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.fgpt.owl2json.AbstractOntologyLoader;
+import uk.ac.ebi.fgpt.owl2json.AssertedOntologyLoader;
+import uk.ac.ebi.fgpt.owl2json.OntologyClassIndex;
+import uk.ac.ebi.fgpt.owl2json.ReasonedOntologyLoader;
+import uk.ac.ebi.fgpt.owl2json.ReasonerFactoryLocator;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading an ontology and extracting its class data, with and without classification.  Each invocation
+ * loads the ontology from scratch; snapshots are not used.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoaderBenchmark {
+    @Param({"1000", "10000"})
+    private int classes;
+
+    private File ontologyFile;
+
+    @Setup
+    public void createOntology() throws Exception {
+        ontologyFile = BenchmarkOntologies.createOntologyFile(classes);
+    }
+
+    @Benchmark
+    public OntologyClassIndex assertedLoader() throws Exception {
+        return load(new AssertedOntologyLoader());
+    }
+
+    @Benchmark
+    public OntologyClassIndex reasonedLoader(ReasonerSettings settings) throws Exception {
+        return load(settings.createLoader(false));
+    }
+
+    @Benchmark
+    public OntologyClassIndex reasonedLoaderTopDown(ReasonerSettings settings) throws Exception {
+        return load(settings.createLoader(true));
+    }
+
+    private OntologyClassIndex load(AbstractOntologyLoader loader) throws Exception {
+        loader.setOntologyURI(BenchmarkOntologies.ONTOLOGY_URI);
+        loader.setOntologyFile(ontologyFile);
+        loader.setSynonymURI(BenchmarkOntologies.SYNONYM_URI);
+        loader.init();
+        return loader.getOntologyClassIndex();
+    }
+
+    /**
+     * The settings of the reasoned loader, kept apart so the asserted loader isn't benchmarked once per reasoner
+     */
+    @State(Scope.Benchmark)
+    public static class ReasonerSettings {
+        @Param({ReasonerFactoryLocator.STRUCTURAL, ReasonerFactoryLocator.HERMIT})
+        private String reasoner;
+
+        @Param({"1", "4"})
+        private int extractionThreads;
+
+        private ReasonedOntologyLoader createLoader(boolean topDownExtraction) {
+            ReasonedOntologyLoader loader = new ReasonedOntologyLoader();
+            loader.setReasonerFactory(ReasonerFactoryLocator.locate(reasoner), reasoner);
+            loader.setExtractionThreads(extractionThreads);
+            loader.setTopDownExtraction(topDownExtraction);
+            return loader;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package uk.ac.ebi.fgpt.owl2json.benchmark;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import uk.ac.ebi.fgpt.owl2json.OWL2JSONDriver;
+import uk.ac.ebi.fgpt.owl2json.OntologyHierarchyBuilder;
+import uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNode;
+import uk.ac.ebi.fgpt.owl2json.OntologyLoader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs the full {@link OWL2JSONDriver} pipeline over synthetic ontologies of each requested size and shape (see {@link
+ * SyntheticOntologyGenerator}), and records the wall time, peak heap and output size of each phase: generating the
+ * ontology, loading it, building and counting the hierarchy, creating the view and writing the output.  Arguments after
+ * "--" are passed to the driver, so any conversion settings can be tested, for example "-- -r hermit -fmt smile".
+ * <p/>
+ * Budgets are read from a properties file, with keys of the form "[shape.][classes.]phase.metric", where the metric is
+ * "time" (in ms), "heap" (in MB) or "size" (in MB), for example "load.time=60000" or "tangled.5000000.build.heap=4096".
+ * The most specific budget applies.  If any phase exceeds its budget, or any run fails, the harness exits with status
+ * 1, so it can gate a build.
+ * <p/>
+ * Peak heap is the sum of the peaks of each heap memory pool during a phase.  The pools may peak at different times, so
+ * this is an upper bound; heap is collected before each phase, so it includes whatever earlier phases left live (for
+ * example, the loaded ontology while the hierarchy is built), as it would in a real run.  Runs should be given a fixed
+ * heap (-Xms and -Xmx), and are best run one size per JVM when comparing peaks.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class ScaleHarness {
+    private static final String[] PHASES = {"generate", "load", "build", "view", "write"};
+    private static final String DEFAULT_CLASSES = "100000,1000000,5000000";
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final File workDirectory;
+    private final String[] driverArguments;
+    private final Properties budgets;
+    private final boolean keepFiles;
+
+    private final List<PhaseResult> results = new ArrayList<>();
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) {
+        Options options = bindOptions();
+        try {
+            CommandLine cl = new GnuParser().parse(options, args, true);
+            if (cl.hasOption("h")) {
+                new HelpFormatter().printHelp("scale-harness [options] -- [owl2json options]", options);
+                System.exit(1);
+            }
+
+            List<Integer> sizes = new ArrayList<>();
+            for (String size : cl.getOptionValue("n", DEFAULT_CLASSES).split(",")) {
+                sizes.add(Integer.parseInt(size.trim()));
+            }
+            List<SyntheticOntologyGenerator.Shape> shapes = new ArrayList<>();
+            if (cl.hasOption("s")) {
+                for (String shape : cl.getOptionValue("s").split(",")) {
+                    shapes.add(SyntheticOntologyGenerator.Shape.valueOf(shape.trim().toUpperCase()));
+                }
+            }
+            else {
+                shapes.addAll(Arrays.asList(SyntheticOntologyGenerator.Shape.values()));
+            }
+
+            Properties budgets = new Properties();
+            if (cl.hasOption("b")) {
+                try (InputStream in = new FileInputStream(cl.getOptionValue("b"))) {
+                    budgets.load(in);
+                }
+            }
+            File workDirectory = cl.hasOption("d")
+                    ? new File(cl.getOptionValue("d"))
+                    : Files.createTempDirectory("owl2json-scale-").toFile();
+            if (!workDirectory.exists() && !workDirectory.mkdirs()) {
+                throw new IOException("Could not create working directory '" + workDirectory + "'");
+            }
+
+            ScaleHarness harness = new ScaleHarness(workDirectory, cl.getArgs(), budgets, cl.hasOption("k"));
+            for (SyntheticOntologyGenerator.Shape shape : shapes) {
+                for (int classes : sizes) {
+                    harness.run(shape, classes);
+                }
+            }
+            harness.report(cl.hasOption("r") ? new File(cl.getOptionValue("r")) : null);
+            System.exit(harness.failures.isEmpty() ? 0 : 1);
+        }
+        catch (ParseException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("scale-harness [options] -- [owl2json options]", options);
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.err.println("Scale harness did not complete successfully: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates a harness that runs conversions in the given directory
+     *
+     * @param workDirectory   the directory to write ontologies and outputs to
+     * @param driverArguments extra arguments for each {@link OWL2JSONDriver} run
+     * @param budgets         the budgets for each phase, as described above
+     * @param keepFiles       whether to keep ontologies and outputs after each run
+     */
+    public ScaleHarness(File workDirectory, String[] driverArguments, Properties budgets, boolean keepFiles) {
+        this.workDirectory = workDirectory;
+        this.driverArguments = driverArguments;
+        this.budgets = budgets;
+        this.keepFiles = keepFiles;
+    }
+
+    /**
+     * Generates an ontology of the given shape and size and converts it, recording each phase.  Failures, including
+     * running out of memory, are recorded rather than thrown, so later runs still happen.
+     *
+     * @param shape   the shape of the ontology
+     * @param classes the number of classes in the ontology
+     */
+    public void run(SyntheticOntologyGenerator.Shape shape, int classes) {
+        String name = shape.name().toLowerCase() + "-" + classes;
+        File ontologyFile = new File(workDirectory, name + ".owl");
+        File outputFile = new File(workDirectory, name + ".json");
+        System.out.println("Running '" + name + "'...");
+        String phase = PHASES[0];
+        try {
+            startPhase();
+            long start = System.currentTimeMillis();
+            new SyntheticOntologyGenerator(shape).write(classes, ontologyFile);
+            endPhase(shape, classes, phase, start, ontologyFile.length());
+
+            OWL2JSONDriver driver = new OWL2JSONDriver();
+            List<String> args = new ArrayList<>(Arrays.asList(
+                    "-o", BenchmarkOntologies.ONTOLOGY_URI.toString(),
+                    "-of", ontologyFile.getAbsolutePath(),
+                    "-f", outputFile.getAbsolutePath()));
+            args.addAll(Arrays.asList(driverArguments));
+            if (driver.parseArguments(args.toArray(new String[args.size()])) != 0) {
+                throw new IllegalArgumentException("Invalid owl2json arguments " + Arrays.toString(driverArguments));
+            }
+
+            phase = PHASES[1];
+            startPhase();
+            start = System.currentTimeMillis();
+            OntologyLoader loader = driver.createConfiguredOntologyLoader();
+            endPhase(shape, classes, phase, start, 0);
+
+            phase = PHASES[2];
+            startPhase();
+            start = System.currentTimeMillis();
+            OntologyHierarchyNode hierarchy =
+                    OntologyHierarchyBuilder.buildHierarchy(loader, driver.createConfiguredNodeCounter());
+            endPhase(shape, classes, phase, start, 0);
+
+            phase = PHASES[3];
+            startPhase();
+            start = System.currentTimeMillis();
+            OntologyHierarchyNode view =
+                    OntologyHierarchyBuilder.createView(hierarchy, driver.getMaxDepth(), driver.getMinSize());
+            endPhase(shape, classes, phase, start, 0);
+
+            phase = PHASES[4];
+            startPhase();
+            start = System.currentTimeMillis();
+            driver.writeConfiguredOutput(view, outputFile);
+            endPhase(shape, classes, phase, start, outputFile.length());
+        }
+        catch (Exception | OutOfMemoryError e) {
+            String failure = "'" + name + "' failed during " + phase + ": " + e;
+            System.err.println(failure);
+            failures.add(failure);
+        }
+        finally {
+            if (!keepFiles) {
+                ontologyFile.delete();
+                outputFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Prints the results of every run, and any budgets exceeded, and writes them to the given report file as tab
+     * separated values
+     *
+     * @param reportFile the file to write, or null to only print the results
+     * @throws IOException if the report could not be written
+     */
+    public void report(File reportFile) throws IOException {
+        System.out.println(String.format("%-10s %10s %-10s %12s %12s %14s", "shape", "classes", "phase",
+                                         "time (ms)", "heap (MB)", "output (bytes)"));
+        for (PhaseResult result : results) {
+            System.out.println(String.format("%-10s %10d %-10s %12d %12d %14d", result.shape, result.classes,
+                                             result.phase, result.time, result.heap / MEGABYTE, result.size));
+        }
+        for (String failure : failures) {
+            System.out.println("FAILED: " + failure);
+        }
+
+        if (reportFile != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(reportFile.toPath(),
+                                                                           StandardCharsets.UTF_8))) {
+                out.println("shape\tclasses\tphase\ttime_ms\tpeak_heap_bytes\toutput_bytes");
+                for (PhaseResult result : results) {
+                    out.println(result.shape + "\t" + result.classes + "\t" + result.phase + "\t" + result.time +
+                                        "\t" + result.heap + "\t" + result.size);
+                }
+            }
+            System.out.println("Wrote report to '" + reportFile + "'");
+        }
+    }
+
+    /**
+     * Collects garbage and resets the peak usage of every heap pool, so the next phase is measured on its own
+     */
+    private void startPhase() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private void endPhase(SyntheticOntologyGenerator.Shape shape, int classes, String phase, long start, long size) {
+        long time = System.currentTimeMillis() - start;
+        long heap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heap += pool.getPeakUsage().getUsed();
+            }
+        }
+        PhaseResult result = new PhaseResult(shape.name().toLowerCase(), classes, phase, time, heap, size);
+        results.add(result);
+        System.out.println("  " + phase + ": " + time + "ms, peak heap " + heap / MEGABYTE + "MB" +
+                                   (size > 0 ? ", output " + size + " bytes" : ""));
+
+        checkBudget(result, "time", time, 1);
+        checkBudget(result, "heap", heap, MEGABYTE);
+        checkBudget(result, "size", size, MEGABYTE);
+    }
+
+    private void checkBudget(PhaseResult result, String metric, long value, long unit) {
+        String key = result.phase + "." + metric;
+        String budget = budgets.getProperty(result.shape + "." + result.classes + "." + key,
+                                            budgets.getProperty(result.shape + "." + key,
+                                                                budgets.getProperty(result.classes + "." + key,
+                                                                                    budgets.getProperty(key))));
+        if (budget != null && value > Long.parseLong(budget.trim()) * unit) {
+            String failure = "'" + result.shape + "-" + result.classes + "' exceeded the " + key + " budget of " +
+                    budget.trim() + (unit == 1 ? "ms" : "MB") + " (" + (value / unit) + ")";
+            System.err.println(failure);
+            failures.add(failure);
+        }
+    }
+
+    private static Options bindOptions() {
+        Options options = new Options();
+
+        Option helpOption = new Option("h", "help", false, "Print the help");
+        options.addOption(helpOption);
+
+        Option classesOption = new Option(
+                "n",
+                "classes",
+                true,
+                "Classes - a comma separated list of ontology sizes to run.  Defaults to '" + DEFAULT_CLASSES + "'.  Optional.");
+        classesOption.setRequired(false);
+        options.addOption(classesOption);
+        Option shapesOption = new Option(
+                "s",
+                "shapes",
+                true,
+                "Shapes - a comma separated list of ontology shapes to run, from 'balanced', 'deep', 'wide' and 'tangled'.  Defaults to all shapes.  Optional.");
+        shapesOption.setRequired(false);
+        options.addOption(shapesOption);
+        Option budgetsOption = new Option(
+                "b",
+                "budgets",
+                true,
+                "Budgets - a properties file of phase budgets, with keys of the form '[shape.][classes.]phase.metric', where the metric is 'time' (ms), 'heap' (MB) or 'size' (MB).  Optional.");
+        budgetsOption.setRequired(false);
+        options.addOption(budgetsOption);
+        Option directoryOption = new Option(
+                "d",
+                "directory",
+                true,
+                "Working directory - the directory to write ontologies and outputs to.  Defaults to a temporary directory.  Optional.");
+        directoryOption.setRequired(false);
+        options.addOption(directoryOption);
+        Option reportOption = new Option(
+                "r",
+                "report",
+                true,
+                "Report file - a file to write the results to, as tab separated values.  Optional.");
+        reportOption.setRequired(false);
+        options.addOption(reportOption);
+        Option keepOption = new Option(
+                "k",
+                "keep",
+                false,
+                "Keep flag - use to keep the generated ontologies and outputs.  Optional.");
+        keepOption.setRequired(false);
+        options.addOption(keepOption);
+
+        return options;
+    }
+
+    private static class PhaseResult {
+        private final String shape;
+        private final int classes;
+        private final String phase;
+        private final long time;
+        private final long heap;
+        private final long size;
+
+        private PhaseResult(String shape, int classes, String phase, long time, long heap, long size) {
+            this.shape = shape;
+            this.classes = classes;
+            this.phase = phase;
+            this.time = time;
+            this.heap = heap;
+            this.size = size;
+        }
+    }
+}
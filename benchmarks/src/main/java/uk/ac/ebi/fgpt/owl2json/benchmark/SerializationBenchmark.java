@@ -0,0 +1,82 @@
+package uk.ac.ebi.fgpt.owl2json.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.fgpt.owl2json.HierarchyFormat;
+import uk.ac.ebi.fgpt.owl2json.OntologyHierarchyBuilder;
+import uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNode;
+import uk.ac.ebi.fgpt.owl2json.TreeSizeNodeCounter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks serializing a generated hierarchy, both to a JSON string with {@link
+ * OntologyHierarchyBuilder#convertOntologyHierarchyToJson(OntologyHierarchyNode)} and streamed in each format.  Streamed
+ * output is discarded, so only serialization is measured.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"10000", "100000"})
+    private int classes;
+
+    @Param({"-1", "3"})
+    private int maxDepth;
+
+    private OntologyHierarchyNode hierarchy;
+
+    private final OutputStream discard = new OutputStream() {
+        @Override public void write(int b) {
+        }
+
+        @Override public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void generateHierarchy() throws Exception {
+        hierarchy = OntologyHierarchyBuilder.generateHierarchy(
+                BenchmarkOntologies.loadOntology(BenchmarkOntologies.createOntologyFile(classes)),
+                new TreeSizeNodeCounter(),
+                maxDepth,
+                -1);
+    }
+
+    @Benchmark
+    public String convertOntologyHierarchyToJson() {
+        return OntologyHierarchyBuilder.convertOntologyHierarchyToJson(hierarchy);
+    }
+
+    @Benchmark
+    public void writeJson() throws IOException {
+        OntologyHierarchyBuilder.writeOntologyHierarchy(hierarchy, HierarchyFormat.JSON, discard);
+    }
+
+    @Benchmark
+    public void writeSmile() throws IOException {
+        OntologyHierarchyBuilder.writeOntologyHierarchy(hierarchy, HierarchyFormat.SMILE, discard);
+    }
+
+    @Benchmark
+    public void writeFlatJson() throws IOException {
+        OntologyHierarchyBuilder.writeFlatOntologyHierarchy(hierarchy, HierarchyFormat.JSON, discard);
+    }
+}
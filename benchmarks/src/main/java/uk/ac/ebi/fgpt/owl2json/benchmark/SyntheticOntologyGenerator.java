@@ -0,0 +1,348 @@
+package uk.ac.ebi.fgpt.owl2json.benchmark;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes synthetic ontologies, as RDF/XML, with a configurable class hierarchy.  Class 0 is the root, and every other
+ * class has a primary parent that gives the hierarchy its shape: either a tree with a fixed fan-out, or a set of chains
+ * of a fixed length hanging from the root.  A proportion of classes also get extra parents, chosen at random from the
+ * classes before their primary parent, which turns the tree into a DAG.  As parents always come before their children,
+ * the hierarchy never has cycles.  Every class has a label and a configurable number of synonyms.
+ * <p/>
+ * The RDF/XML is written directly, one class at a time, so ontologies of millions of classes can be generated without
+ * holding them in memory.  Ontologies are generated from a seed, so the same settings always give the same file.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class SyntheticOntologyGenerator {
+    /**
+     * The shapes of hierarchy used to test owl2json at scale, each a preset of the generator settings
+     */
+    public enum Shape {
+        /**
+         * A tree with a fan-out of 8, in which 10% of classes have a second parent, as in most real ontologies
+         */
+        BALANCED(8, 0, 1, 0.1),
+        /**
+         * Chains of 10,000 classes hanging from the root, so the hierarchy is very deep
+         */
+        DEEP(0, 10000, 0, 0),
+        /**
+         * A tree with a fan-out of 50,000, so a few classes have a very large number of children
+         */
+        WIDE(50000, 0, 0, 0),
+        /**
+         * A tree with a fan-out of 8, in which every class has up to 4 extra parents
+         */
+        TANGLED(8, 0, 4, 1.0);
+
+        private final int fanOut;
+        private final int chainLength;
+        private final int extraParents;
+        private final double extraParentRate;
+
+        Shape(int fanOut, int chainLength, int extraParents, double extraParentRate) {
+            this.fanOut = fanOut;
+            this.chainLength = chainLength;
+            this.extraParents = extraParents;
+            this.extraParentRate = extraParentRate;
+        }
+    }
+
+    private static final String RDF_URI = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String RDFS_URI = "http://www.w3.org/2000/01/rdf-schema#";
+    private static final String OWL_URI = "http://www.w3.org/2002/07/owl#";
+
+    private URI ontologyURI = BenchmarkOntologies.ONTOLOGY_URI;
+    private URI synonymURI = BenchmarkOntologies.SYNONYM_URI;
+    private int fanOut;
+    private int chainLength;
+    private int extraParents;
+    private double extraParentRate;
+    private int synonyms = 1;
+    private long seed = -1;
+
+    public static void main(String[] args) {
+        Options options = bindOptions();
+        try {
+            CommandLine cl = new GnuParser().parse(options, args);
+            if (cl.hasOption("h") || !cl.hasOption("n") || !cl.hasOption("f")) {
+                new HelpFormatter().printHelp("synthetic-ontology", options, true);
+                System.exit(1);
+            }
+
+            SyntheticOntologyGenerator generator = new SyntheticOntologyGenerator(
+                    Shape.valueOf(cl.getOptionValue("s", Shape.BALANCED.name()).toUpperCase()));
+            if (cl.hasOption("fo")) {
+                generator.setFanOut(Integer.parseInt(cl.getOptionValue("fo")));
+            }
+            if (cl.hasOption("cl")) {
+                generator.setChainLength(Integer.parseInt(cl.getOptionValue("cl")));
+            }
+            if (cl.hasOption("ep")) {
+                generator.setExtraParents(Integer.parseInt(cl.getOptionValue("ep")));
+            }
+            if (cl.hasOption("epr")) {
+                generator.setExtraParentRate(Double.parseDouble(cl.getOptionValue("epr")));
+            }
+            if (cl.hasOption("sy")) {
+                generator.setSynonyms(Integer.parseInt(cl.getOptionValue("sy")));
+            }
+            if (cl.hasOption("seed")) {
+                generator.setSeed(Long.parseLong(cl.getOptionValue("seed")));
+            }
+
+            int classes = Integer.parseInt(cl.getOptionValue("n"));
+            File ontologyFile = new File(cl.getOptionValue("f"));
+            long start = System.currentTimeMillis();
+            generator.write(classes, ontologyFile);
+            System.out.println("Wrote " + classes + " classes to '" + ontologyFile + "' in " +
+                                       (System.currentTimeMillis() - start) + "ms");
+        }
+        catch (ParseException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("synthetic-ontology", options, true);
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.err.println("Failed to write the ontology: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates a generator with the settings of a balanced tree
+     */
+    public SyntheticOntologyGenerator() {
+        this(Shape.BALANCED);
+    }
+
+    /**
+     * Creates a generator with the settings of the given shape, which can then be adjusted
+     *
+     * @param shape the shape to start from
+     */
+    public SyntheticOntologyGenerator(Shape shape) {
+        this.fanOut = shape.fanOut;
+        this.chainLength = shape.chainLength;
+        this.extraParents = shape.extraParents;
+        this.extraParentRate = shape.extraParentRate;
+    }
+
+    public void setOntologyURI(URI ontologyURI) {
+        this.ontologyURI = ontologyURI;
+    }
+
+    public void setSynonymURI(URI synonymURI) {
+        this.synonymURI = synonymURI;
+    }
+
+    /**
+     * Sets the number of children of each class in a tree.  Ignored if a chain length is set.
+     *
+     * @param fanOut the number of children of each class
+     */
+    public void setFanOut(int fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Sets the length of the chains hanging from the root.  If greater than 0, the hierarchy is a set of chains rather
+     * than a tree with a fixed fan-out.
+     *
+     * @param chainLength the number of classes in each chain
+     */
+    public void setChainLength(int chainLength) {
+        this.chainLength = chainLength;
+    }
+
+    /**
+     * Sets the maximum number of extra parents a class may have, on top of its primary parent
+     *
+     * @param extraParents the maximum number of extra parents
+     */
+    public void setExtraParents(int extraParents) {
+        this.extraParents = extraParents;
+    }
+
+    /**
+     * Sets the probability that each of the extra parents of a class is added
+     *
+     * @param extraParentRate the probability, between 0 and 1
+     */
+    public void setExtraParentRate(double extraParentRate) {
+        this.extraParentRate = extraParentRate;
+    }
+
+    public void setSynonyms(int synonyms) {
+        this.synonyms = synonyms;
+    }
+
+    /**
+     * Sets the seed for choosing extra parents.  By default, the number of classes is used, so ontologies of the same
+     * size and shape are always the same.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes an ontology with the given number of classes to the given file
+     *
+     * @param classes      the number of classes, including the root
+     * @param ontologyFile the file to write
+     * @throws IOException if the file could not be written
+     */
+    public void write(int classes, File ontologyFile) throws IOException {
+        if (chainLength <= 0 && fanOut <= 0) {
+            throw new IllegalArgumentException("Either a fan-out or a chain length greater than 0 is required");
+        }
+        // the synonym property is used as an element, so it must split into a namespace and a local name
+        String synonym = synonymURI.toString();
+        int split = Math.max(synonym.lastIndexOf('/'), synonym.lastIndexOf('#')) + 1;
+        if (split == 0 || split == synonym.length()) {
+            throw new IllegalArgumentException("Synonym URI '" + synonymURI + "' has no local name");
+        }
+        String synonymStart = "    <syn:" + synonym.substring(split) + ">synonym ";
+        String synonymEnd = "</syn:" + synonym.substring(split) + ">\n";
+
+        Random random = new Random(seed == -1 ? classes : seed);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(ontologyFile),
+                                                                    StandardCharsets.UTF_8), 1 << 16)) {
+            writeHeader(out, synonym.substring(0, split));
+            for (int i = 0; i < classes; i++) {
+                out.write("  <owl:Class rdf:about=\"");
+                out.write(getClassURI(i));
+                out.write("\">\n");
+                out.write("    <rdfs:label>class ");
+                out.write(Integer.toString(i));
+                out.write("</rdfs:label>\n");
+                for (int s = 0; s < synonyms; s++) {
+                    out.write(synonymStart);
+                    out.write(Integer.toString(s));
+                    out.write(" of class ");
+                    out.write(Integer.toString(i));
+                    out.write(synonymEnd);
+                }
+                if (i > 0) {
+                    int parent = getPrimaryParent(i);
+                    writeParent(out, parent);
+                    for (int e = 0; e < extraParents && parent > 0; e++) {
+                        if (random.nextDouble() < extraParentRate) {
+                            writeParent(out, random.nextInt(parent));
+                        }
+                    }
+                }
+                out.write("  </owl:Class>\n");
+            }
+            out.write("</rdf:RDF>\n");
+        }
+    }
+
+    /**
+     * Returns the URI of the class with the given number in the generated ontologies
+     *
+     * @param i the number of the class
+     * @return the class URI
+     */
+    public String getClassURI(int i) {
+        return ontologyURI + "#C" + i;
+    }
+
+    private int getPrimaryParent(int i) {
+        if (chainLength > 0) {
+            // the first class of each chain hangs from the root, the rest from the class before
+            return (i - 1) % chainLength == 0 ? 0 : i - 1;
+        }
+        else {
+            return (i - 1) / fanOut;
+        }
+    }
+
+    private void writeHeader(Writer out, String synonymNamespace) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<rdf:RDF xmlns:rdf=\"" + RDF_URI + "\"\n");
+        out.write("         xmlns:rdfs=\"" + RDFS_URI + "\"\n");
+        out.write("         xmlns:owl=\"" + OWL_URI + "\"\n");
+        out.write("         xmlns:syn=\"" + synonymNamespace + "\">\n");
+        out.write("  <owl:Ontology rdf:about=\"" + ontologyURI + "\"/>\n");
+        out.write("  <owl:AnnotationProperty rdf:about=\"" + synonymURI + "\"/>\n");
+    }
+
+    private void writeParent(Writer out, int parent) throws IOException {
+        out.write("    <rdfs:subClassOf rdf:resource=\"");
+        out.write(getClassURI(parent));
+        out.write("\"/>\n");
+    }
+
+    private static Options bindOptions() {
+        Options options = new Options();
+
+        Option helpOption = new Option("h", "help", false, "Print the help");
+        options.addOption(helpOption);
+
+        Option classesOption = new Option("n", "classes", true, "Classes - the number of classes to generate.");
+        classesOption.setRequired(false);
+        options.addOption(classesOption);
+        Option fileOption = new Option("f", "file", true, "Output file - the file to write the ontology to.");
+        fileOption.setRequired(false);
+        options.addOption(fileOption);
+        Option shapeOption = new Option(
+                "s",
+                "shape",
+                true,
+                "Shape - one of 'balanced', 'deep', 'wide' or 'tangled'.  The other options adjust the shape.  Defaults to 'balanced'.  Optional.");
+        shapeOption.setRequired(false);
+        options.addOption(shapeOption);
+        Option fanOutOption = new Option("fo", "fanOut", true, "Fan-out - the number of children of each class.  Optional.");
+        fanOutOption.setRequired(false);
+        options.addOption(fanOutOption);
+        Option chainLengthOption = new Option(
+                "cl",
+                "chainLength",
+                true,
+                "Chain length - if set, the hierarchy is made of chains of this many classes hanging from the root.  Optional.");
+        chainLengthOption.setRequired(false);
+        options.addOption(chainLengthOption);
+        Option extraParentsOption = new Option(
+                "ep",
+                "extraParents",
+                true,
+                "Extra parents - the maximum number of parents each class has on top of its primary parent.  Optional.");
+        extraParentsOption.setRequired(false);
+        options.addOption(extraParentsOption);
+        Option extraParentRateOption = new Option(
+                "epr",
+                "extraParentRate",
+                true,
+                "Extra parent rate - the probability, between 0 and 1, that each extra parent is added.  Optional.");
+        extraParentRateOption.setRequired(false);
+        options.addOption(extraParentRateOption);
+        Option synonymsOption = new Option("sy", "synonyms", true, "Synonyms - the number of synonyms of each class.  Defaults to 1.  Optional.");
+        synonymsOption.setRequired(false);
+        options.addOption(synonymsOption);
+        Option seedOption = new Option("seed", "seed", true, "Seed - the seed for choosing extra parents.  Defaults to the number of classes.  Optional.");
+        seedOption.setRequired(false);
+        options.addOption(seedOption);
+
+        return options;
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.ebi.fgpt.owl2json.benchmark;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+/**
+ * A local stand-in for ZOOMA, so that {@link uk.ac.ebi.fgpt.owl2json.ZoomaNodeCounter} can be benchmarked without
+ * network access.  Every query is answered with the same SPARQL JSON result, giving a count for each class in a
+ * benchmark ontology (see {@link BenchmarkOntologies}).
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class ZoomaFixture {
+    private final HttpServer server;
+
+    /**
+     * Starts a fixture with counts for the first <code>classes</code> classes of the benchmark ontologies
+     *
+     * @param classes the number of classes to return counts for
+     * @throws IOException if the server could not be started
+     */
+    public ZoomaFixture(int classes) throws IOException {
+        final byte[] response = createResponse(classes);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/zooma", new HttpHandler() {
+            @Override public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Content-Type", "application/sparql-results+json");
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Returns the location of this fixture, to use in place of the location of ZOOMA
+     *
+     * @return the base URI of this fixture
+     */
+    public URI getLocation() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/zooma");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private static byte[] createResponse(int classes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonGenerator generator = new JsonFactory().createGenerator(bytes, JsonEncoding.UTF8);
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("head");
+        generator.writeArrayFieldStart("vars");
+        generator.writeString("semantictag");
+        generator.writeString("datapoints");
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeObjectFieldStart("results");
+        generator.writeArrayFieldStart("bindings");
+        for (int i = 0; i < classes; i++) {
+            // not every class is annotated, as in ZOOMA
+            if (i % 3 == 0) {
+                continue;
+            }
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("semantictag");
+            generator.writeStringField("type", "uri");
+            generator.writeStringField("value", BenchmarkOntologies.getClassIRI(i).toString());
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("datapoints");
+            generator.writeStringField("type", "literal");
+            generator.writeStringField("value", Integer.toString(i % 17 + 1));
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.close();
+        return bytes.toByteArray();
+    }
+}
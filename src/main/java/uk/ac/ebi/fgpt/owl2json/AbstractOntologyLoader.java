@@ -7,7 +7,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -27,6 +30,10 @@ public abstract class AbstractOntologyLoader implements OntologyLoader {
 
     private URI synonymURI;
 
+    private File snapshotDirectory;
+
+    private boolean lazy;
+
     private OWLOntologyManager manager;
     private IRI ontologyIRI;
     private OWLDataFactory factory;
@@ -35,6 +42,10 @@ public abstract class AbstractOntologyLoader implements OntologyLoader {
     private Map<IRI, Set<String>> ontologyTypeLabels;
     private Map<IRI, Set<String>> ontologySynonyms;
     private Map<IRI, Set<IRI>> ontologyChildren;
+    private OntologyClassIndex ontologyClassIndex;
+
+    private Set<ClassData> extractedClassData;
+    private Map<Set<String>, Set<String>> typeLabelPool;
 
     private Logger log = LoggerFactory.getLogger(getClass());
 
@@ -104,6 +115,50 @@ public abstract class AbstractOntologyLoader implements OntologyLoader {
         this.synonymURI = synonymURI;
     }
 
+    /**
+     * Returns the directory in which snapshots of loaded ontologies are cached, or null if snapshots are not in use
+     *
+     * @return the snapshot directory
+     */
+    public File getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    /**
+     * Sets the directory in which snapshots of loaded ontologies are cached.  If set, and the ontology is loaded from
+     * an <code>ontologyFile</code>, then the extracted labels, types, synonyms and children are written to a snapshot
+     * in this directory once loaded.  Subsequent loads of an identical file, with the same loader settings, restore
+     * the snapshot instead of loading (and classifying) the ontology.  This property is optional.
+     *
+     * @param snapshotDirectory the directory to cache snapshots in
+     */
+    public void setSnapshotDirectory(File snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    /**
+     * Returns whether this loader extracts class data lazily
+     *
+     * @return true if class data is extracted on first access
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Sets whether this loader should extract class data lazily.  By default, {@link #init()} loads the ontology and
+     * extracts labels, type labels, synonyms and children for every class.  In lazy mode, <code>init()</code> only
+     * loads (and, where applicable, classifies) the ontology, and each of the maps returned by this loader is
+     * extracted the first time it is requested - so, for example, generating a hierarchy never extracts type labels or
+     * synonyms.  The ontology is retained until every map has been extracted.  Snapshots are not written in lazy mode,
+     * although existing snapshots will still be restored.
+     *
+     * @param lazy true to extract class data on first access
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     public OWLOntologyManager getManager() {
         return manager;
     }
@@ -122,39 +177,30 @@ public abstract class AbstractOntologyLoader implements OntologyLoader {
     }
 
     @Override public Map<IRI, String> getOntologyClassLabels() {
-        if (ontologyLabels != null) {
-            return ontologyLabels;
-        }
-        else {
-            throw new IllegalStateException(getClass().getSimpleName() + " has not been initialized");
-        }
+        ensureExtracted(ClassData.LABELS);
+        return ontologyLabels;
     }
 
     @Override public Map<IRI, Set<String>> getOntologyClassTypeLabels() {
-        if (ontologyTypeLabels != null) {
-            return ontologyTypeLabels;
-        }
-        else {
-            throw new IllegalStateException(getClass().getSimpleName() + " has not been initialized");
-        }
+        ensureExtracted(ClassData.TYPE_LABELS);
+        return ontologyTypeLabels;
     }
 
     @Override public Map<IRI, Set<String>> getOntologyClassSynonyms() {
-        if (ontologySynonyms != null) {
-            return ontologySynonyms;
-        }
-        else {
-            throw new IllegalStateException(getClass().getSimpleName() + " has not been initialized");
-        }
+        ensureExtracted(ClassData.SYNONYMS);
+        return ontologySynonyms;
     }
 
     @Override public Map<IRI, Set<IRI>> getOntologyClassChildren() {
-        if (ontologyChildren != null) {
-            return ontologyChildren;
-        }
-        else {
-            throw new IllegalStateException(getClass().getSimpleName() + " has not been initialized");
+        ensureExtracted(ClassData.CHILDREN);
+        return ontologyChildren;
+    }
+
+    @Override public synchronized OntologyClassIndex getOntologyClassIndex() {
+        if (ontologyClassIndex == null) {
+            ontologyClassIndex = OntologyClassIndex.build(getOntologyClassLabels(), getOntologyClassChildren());
         }
+        return ontologyClassIndex;
     }
 
     public void init() throws Exception {
@@ -167,6 +213,29 @@ public abstract class AbstractOntologyLoader implements OntologyLoader {
                                                           IRI.create(getOntologyFile())));
         }
         this.factory = manager.getOWLDataFactory();
+        this.ontologyClassIndex = null;
+        this.extractedClassData = EnumSet.noneOf(ClassData.class);
+
+        // restore from snapshot, if we have one
+        File snapshotFile = getSnapshotFile();
+        if (snapshotFile != null && snapshotFile.exists()) {
+            try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("restore")) {
+                getLog().info("Restoring ontology from snapshot " + snapshotFile.getAbsolutePath());
+                OntologySnapshot snapshot = OntologySnapshot.read(snapshotFile);
+                this.ontologyIRI = snapshot.getOntologyIRI();
+                this.ontologyLabels = snapshot.getOntologyClassLabels();
+                this.ontologyTypeLabels = snapshot.getOntologyClassTypeLabels();
+                this.ontologySynonyms = snapshot.getOntologyClassSynonyms();
+                this.ontologyChildren = snapshot.getOntologyClassChildren();
+                this.extractedClassData = EnumSet.allOf(ClassData.class);
+                phase.setItems(ontologyLabels.size());
+                return;
+            }
+            catch (IOException e) {
+                getLog().warn("Failed to restore snapshot " + snapshotFile.getAbsolutePath() + ", " +
+                                      "ontology will be reloaded (" + e.getMessage() + ")");
+            }
+        }
 
         // init cache fields
         this.ontologyLabels = new HashMap<>();
@@ -176,6 +245,82 @@ public abstract class AbstractOntologyLoader implements OntologyLoader {
 
         // load the ontology
         loadOntology();
+        if (isLazy()) {
+            getLog().debug("Lazy loading enabled, class data will be extracted on first access");
+            return;
+        }
+        extract(EnumSet.allOf(ClassData.class));
+
+        // and snapshot it for next time
+        if (snapshotFile != null) {
+            try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("snapshot")) {
+                new OntologySnapshot(ontologyIRI, ontologyLabels, ontologyTypeLabels, ontologySynonyms, ontologyChildren)
+                        .write(snapshotFile);
+                phase.setItems(ontologyLabels.size());
+                getLog().info("Wrote ontology snapshot " + snapshotFile.getAbsolutePath());
+            }
+            catch (IOException e) {
+                getLog().warn("Failed to write snapshot " + snapshotFile.getAbsolutePath() + " " +
+                                      "(" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    private synchronized void ensureExtracted(ClassData classData) {
+        if (extractedClassData == null) {
+            throw new IllegalStateException(getClass().getSimpleName() + " has not been initialized");
+        }
+        if (!extractedClassData.contains(classData)) {
+            try {
+                extract(EnumSet.of(classData));
+            }
+            catch (OWLOntologyCreationException e) {
+                throw new IllegalStateException("Failed to extract " + classData + " from " + getOntologyIRI(), e);
+            }
+        }
+    }
+
+    private synchronized void extract(Set<ClassData> classData) throws OWLOntologyCreationException {
+        this.typeLabelPool = new HashMap<>();
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("extract")) {
+            extractClassData(classData);
+            phase.setItems(ontologyLabels.size());
+        }
+        finally {
+            this.typeLabelPool = null;
+        }
+        extractedClassData.addAll(classData);
+        if (extractedClassData.containsAll(EnumSet.allOf(ClassData.class))) {
+            getLog().debug("All class data has been extracted, releasing ontology");
+            releaseOntology();
+        }
+    }
+
+    /**
+     * Returns a description of the settings of this loader that affect the data it extracts, used to key snapshots.
+     * Subclasses with additional settings that change the extracted data should extend this description.
+     *
+     * @return a description of this loaders settings
+     */
+    protected String getSnapshotSettings() {
+        return getClass().getName() + ";ontologyURI=" + getOntologyURI() + ";synonymURI=" + getSynonymURI();
+    }
+
+    private File getSnapshotFile() throws IOException {
+        if (getSnapshotDirectory() == null) {
+            return null;
+        }
+        if (getOntologyFile() == null) {
+            getLog().debug("Snapshots are only supported for ontologies loaded from a file, " +
+                                   "so '" + getOntologyURI() + "' will not be snapshotted");
+            return null;
+        }
+        if (!getSnapshotDirectory().exists() && !getSnapshotDirectory().mkdirs()) {
+            getLog().warn("Unable to create snapshot directory " + getSnapshotDirectory().getAbsolutePath());
+            return null;
+        }
+        String key = OntologySnapshot.generateKey(getOntologyFile(), getSnapshotSettings());
+        return new File(getSnapshotDirectory(), "owl2json-" + key + ".snapshot");
     }
 
     protected Set<String> getStringLiteralAnnotationValues(OWLOntology ontology,
@@ -199,8 +344,26 @@ public abstract class AbstractOntologyLoader implements OntologyLoader {
         this.ontologyLabels.put(clsIri, label);
     }
 
+    /**
+     * Adds the type labels of a class.  Sibling classes frequently have identical type labels, so type label sets are
+     * pooled: the set stored for this class will be an unmodifiable set, shared with any other class that has the same
+     * type labels.  {@link SharedLabelSet}s are already shared, and are stored as is.
+     *
+     * @param clsIri          the IRI of the class
+     * @param classTypeLabels the type labels of this class
+     */
     protected void addClassTypes(IRI clsIri, Set<String> classTypeLabels) {
-        this.ontologyTypeLabels.put(clsIri, classTypeLabels);
+        if (classTypeLabels instanceof SharedLabelSet) {
+            this.ontologyTypeLabels.put(clsIri, classTypeLabels);
+        }
+        else {
+            Set<String> pooled = typeLabelPool.get(classTypeLabels);
+            if (pooled == null) {
+                pooled = Collections.unmodifiableSet(classTypeLabels);
+                typeLabelPool.put(pooled, pooled);
+            }
+            this.ontologyTypeLabels.put(clsIri, pooled);
+        }
     }
 
     protected void addSynonyms(IRI clsIri, Set<String> synonyms) {
@@ -212,11 +375,40 @@ public abstract class AbstractOntologyLoader implements OntologyLoader {
     }
 
     /**
-     * Extracts and loads into memory all the class labels and corresponding IRIs.  This class makes the assumption that
-     * one primary label per class exists. If any classes contain multiple rdfs:labels, these classes are ignored.
-     * <p/>
-     * Once loaded, this method must set the IRI of the ontology, and should add class labels, class types (however you
-     * chose to implement the concept of a "type") and synonyms, where they exist.
+     * Loads the ontology, and prepares it for the extraction of class data (for example, by classifying it).  Once
+     * loaded, this method must set the IRI of the ontology.  Class data is extracted separately, by {@link
+     * #extractClassData(Set)}, and implementations should therefore retain whatever they need to do so until {@link
+     * #releaseOntology()} is called.
      */
     protected abstract void loadOntology() throws OWLOntologyCreationException;
+
+    /**
+     * Extracts and loads into memory the requested class data from the loaded ontology.  This class makes the
+     * assumption that one primary label per class exists. If any classes contain multiple rdfs:labels, these classes are
+     * ignored.
+     * <p/>
+     * Depending on the requested data, this method should add class labels, class types (however you chose to
+     * implement the concept of a "type"), synonyms and children, where they exist.  This method is called once with all
+     * class data by default, or once per type of class data if this loader is lazy.
+     *
+     * @param classData the class data to extract
+     */
+    protected abstract void extractClassData(Set<ClassData> classData) throws OWLOntologyCreationException;
+
+    /**
+     * Releases the loaded ontology, and any other resources acquired in {@link #loadOntology()}, once all class data
+     * has been extracted.  By default, this does nothing.
+     */
+    protected void releaseOntology() {
+    }
+
+    /**
+     * The types of class data that an ontology loader extracts
+     */
+    protected enum ClassData {
+        LABELS,
+        TYPE_LABELS,
+        SYNONYMS,
+        CHILDREN
+    }
 }
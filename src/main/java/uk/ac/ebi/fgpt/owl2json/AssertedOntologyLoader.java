@@ -16,17 +16,29 @@ import java.util.Set;
  * @date 15/02/12
  */
 public class AssertedOntologyLoader extends AbstractOntologyLoader {
+    private OWLOntology ontology;
+
     protected void loadOntology() throws OWLOntologyCreationException {
         getLog().debug("Loading ontology...");
-        OWLOntology ontology = getManager().loadOntology(IRI.create(getOntologyURI()));
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("parse")) {
+            ontology = getManager().loadOntology(IRI.create(getOntologyURI()));
+            phase.setItems(ontology.getClassesInSignature().size());
+        }
         IRI ontologyIRI = ontology.getOntologyID().getOntologyIRI();
         setOntologyIRI(ontologyIRI);
         getLog().debug("Successfully loaded ontology " + ontologyIRI);
+    }
+
+    @Override protected void releaseOntology() {
+        ontology = null;
+    }
+
+    protected void extractClassData(Set<ClassData> classData) {
         Set<OWLClass> allClasses = ontology.getClassesInSignature();
 
         OWLAnnotationProperty rdfsLabel = getFactory().getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI());
         OWLAnnotationProperty synonym = null;
-        if (getSynonymURI() != null) {
+        if (getSynonymURI() != null && classData.contains(ClassData.SYNONYMS)) {
             synonym = getFactory().getOWLAnnotationProperty(IRI.create(getSynonymURI()));
         }
 
@@ -34,46 +46,50 @@ public class AssertedOntologyLoader extends AbstractOntologyLoader {
         int labelledClassCount = 0;
         int synonymCount = 0;
         int synonymedClassCount = 0;
-        getLog().debug("Loading labels and synonyms...");
+        getLog().debug("Loading " + classData + "...");
         for (OWLClass ontologyClass : allClasses) {
             IRI clsIri = ontologyClass.getIRI();
 
             // get label annotations
-            Set<String> labels = getStringLiteralAnnotationValues(ontology, ontologyClass, rdfsLabel);
             String label = null;
-            if (labels.isEmpty()) {
-                getLog().warn("OWLClass " + ontologyClass + " contains no label. " +
-                                      "No labels for this class will be loaded.");
-            }
-            else {
-                if (labels.size() > 1) {
-                    getLog().warn("OWLClass " + ontologyClass + " contains more than one label " +
-                                          "(including '" + labels.iterator().next() + "'). " +
+            if (classData.contains(ClassData.LABELS)) {
+                Set<String> labels = getStringLiteralAnnotationValues(ontology, ontologyClass, rdfsLabel);
+                if (labels.isEmpty()) {
+                    getLog().warn("OWLClass " + ontologyClass + " contains no label. " +
                                           "No labels for this class will be loaded.");
                 }
                 else {
-                    label = labels.iterator().next();
-                    addClassLabel(clsIri, label);
-                    labelledClassCount++;
-                    labelCount++;
+                    if (labels.size() > 1) {
+                        getLog().warn("OWLClass " + ontologyClass + " contains more than one label " +
+                                              "(including '" + labels.iterator().next() + "'). " +
+                                              "No labels for this class will be loaded.");
+                    }
+                    else {
+                        label = labels.iterator().next();
+                        addClassLabel(clsIri, label);
+                        labelledClassCount++;
+                        labelCount++;
+                    }
                 }
             }
 
             // get types
-            Set<String> ontologyTypeLabelSet = new HashSet<>();
-            for (OWLClassExpression parentClassExpression : ontologyClass.getSuperClasses(ontology)) {
-                if (!parentClassExpression.isAnonymous()) {
-                    OWLClass parentClass = parentClassExpression.asOWLClass();
-                    getLog().debug("Next parent of " + label + ": " + parentClass);
-                    Set<String> typeVals = getStringLiteralAnnotationValues(ontology, parentClass, rdfsLabel);
-                    ontologyTypeLabelSet.addAll(typeVals);
-                }
-                else {
-                    getLog().trace("OWLClassExpression " + parentClassExpression + " is an anonymous class. " +
-                                           "No synonyms for this class will be loaded.");
+            if (classData.contains(ClassData.TYPE_LABELS)) {
+                Set<String> ontologyTypeLabelSet = new HashSet<>();
+                for (OWLClassExpression parentClassExpression : ontologyClass.getSuperClasses(ontology)) {
+                    if (!parentClassExpression.isAnonymous()) {
+                        OWLClass parentClass = parentClassExpression.asOWLClass();
+                        getLog().debug("Next parent of " + label + ": " + parentClass);
+                        Set<String> typeVals = getStringLiteralAnnotationValues(ontology, parentClass, rdfsLabel);
+                        ontologyTypeLabelSet.addAll(typeVals);
+                    }
+                    else {
+                        getLog().trace("OWLClassExpression " + parentClassExpression + " is an anonymous class. " +
+                                               "No synonyms for this class will be loaded.");
+                    }
                 }
+                addClassTypes(clsIri, ontologyTypeLabelSet);
             }
-            addClassTypes(clsIri, ontologyTypeLabelSet);
 
             // get all synonym annotations
             if (synonym != null) {
@@ -90,18 +106,20 @@ public class AssertedOntologyLoader extends AbstractOntologyLoader {
             }
 
             // get all children
-            getLog().debug("Loading children...");
-            Set<IRI> childIriSet = new HashSet<>();
-            for (OWLClassExpression childClassExpression : ontologyClass.getSubClasses(ontology)) {
-                OWLClass childClass = childClassExpression.asOWLClass();
-                getLog().debug("Next child of " + label + ": " + childClass);
-                childIriSet.add(childClass.getIRI());
+            if (classData.contains(ClassData.CHILDREN)) {
+                getLog().debug("Loading children...");
+                Set<IRI> childIriSet = new HashSet<>();
+                for (OWLClassExpression childClassExpression : ontologyClass.getSubClasses(ontology)) {
+                    OWLClass childClass = childClassExpression.asOWLClass();
+                    getLog().debug("Next child of " + label + ": " + childClass);
+                    childIriSet.add(childClass.getIRI());
+                }
+                addChildren(clsIri, childIriSet);
             }
-            addChildren(clsIri, childIriSet);
         }
 
         getLog().debug("Successfully loaded " + labelCount + " labels on " + labelledClassCount + " classes, and " +
                                synonymCount + " synonyms on " + synonymedClassCount + " classes, " +
-                               "from " + ontologyIRI.toString() + "!");
+                               "from " + getOntologyIRI().toString() + "!");
     }
 }
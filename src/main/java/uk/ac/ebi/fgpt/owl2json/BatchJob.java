@@ -0,0 +1,109 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+/**
+ * A single conversion in a batch run by {@link OWL2JSONBatchDriver}, tracking its own status, timing and any failure.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class BatchJob {
+    public enum Status {
+        PENDING,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    private final int lineNumber;
+    private final String arguments;
+
+    private OWL2JSONDriver driver;
+    private int memoryEstimate;
+
+    private volatile Status status;
+    private volatile long startTime;
+    private volatile long elapsedTime;
+    private volatile Throwable failure;
+
+    public BatchJob(int lineNumber, String arguments) {
+        this.lineNumber = lineNumber;
+        this.arguments = arguments;
+        this.status = Status.PENDING;
+        this.startTime = -1;
+        this.elapsedTime = -1;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public String getArguments() {
+        return arguments;
+    }
+
+    public OWL2JSONDriver getDriver() {
+        return driver;
+    }
+
+    /**
+     * Returns the memory, in MB, this job is expected to need
+     *
+     * @return the estimated memory needed by this job in MB
+     */
+    public int getMemoryEstimate() {
+        return memoryEstimate;
+    }
+
+    public void setDriver(OWL2JSONDriver driver, int memoryEstimate) {
+        this.driver = driver;
+        this.memoryEstimate = memoryEstimate;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the time, in milliseconds, this job took to run, or -1 if it has not been run
+     *
+     * @return the time taken to run this job in ms
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Runs this job, recording whether it succeeded or failed.  Failures, including running out of memory, are
+     * recorded against this job rather than thrown, so they cannot affect other jobs in the same batch.
+     */
+    public void run() {
+        if (driver == null) {
+            fail(new IllegalStateException("No conversion is configured for line " + lineNumber));
+            return;
+        }
+        status = Status.RUNNING;
+        startTime = System.currentTimeMillis();
+        try {
+            driver.convert();
+            elapsedTime = System.currentTimeMillis() - startTime;
+            status = Status.SUCCEEDED;
+        }
+        catch (Exception | OutOfMemoryError | StackOverflowError e) {
+            elapsedTime = System.currentTimeMillis() - startTime;
+            fail(e);
+        }
+    }
+
+    public void fail(Throwable failure) {
+        this.failure = failure;
+        this.status = Status.FAILED;
+    }
+}
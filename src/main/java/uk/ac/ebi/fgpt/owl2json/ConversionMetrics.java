@@ -0,0 +1,382 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the wall time, CPU time, allocated bytes, throughput and peak heap of each phase of a conversion.  Metrics are
+ * attached to the thread running the conversion, and code anywhere in that conversion marks out a phase with {@link
+ * #startPhase(String)}:
+ * <pre>
+ * try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("count")) {
+ *     ...
+ *     phase.setItems(countedNodes);
+ * }
+ * </pre>
+ * If no metrics are attached to the current thread, phases are not measured, so the loaders and {@link
+ * OntologyHierarchyBuilder} can be used without metrics at no cost.
+ * <p/>
+ * Phases started within another phase are named by their path, e.g. "load/parse".  Phases with the same path are
+ * combined, so a phase run once per resolution or per shard appears once, with the number of calls.  CPU time and
+ * allocated bytes are those of the attached thread, so they do not include work handed to other threads (for example,
+ * parallel class extraction); they are -1 if the JVM cannot measure them.  Peak heap is the highest heap use, across
+ * all threads, seen during the phase, and is the sum of the peaks of each heap pool, which may be reached at different
+ * times; it is only meaningful when one conversion runs at a time.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class ConversionMetrics implements ConversionMetricsMXBean {
+    private static Logger log = LoggerFactory.getLogger(ConversionMetrics.class);
+
+    private static final ThreadLocal<ConversionMetrics> current = new ThreadLocal<>();
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+
+    static {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    private final URI ontologyURI;
+    private final long startTime;
+    private final long startNanos;
+    private long wallTime = -1;
+
+    private final Deque<Phase> openPhases = new ArrayDeque<>();
+    private final Map<String, PhaseMetrics> phases = new LinkedHashMap<>();
+
+    /**
+     * Creates metrics for a conversion of the given ontology, starting now
+     *
+     * @param ontologyURI the URI of the ontology being converted
+     */
+    public ConversionMetrics(URI ontologyURI) {
+        this.ontologyURI = ontologyURI;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts a phase of the conversion running on the current thread.  The phase ends when it is closed.
+     *
+     * @param name the name of the phase
+     * @return the phase, to close when it ends
+     */
+    public static Phase startPhase(String name) {
+        return new Phase(current.get(), name);
+    }
+
+    /**
+     * Attaches these metrics to the current thread, so that phases started on it are recorded here
+     */
+    public void attach() {
+        current.set(this);
+    }
+
+    /**
+     * Detaches any metrics from the current thread
+     */
+    public void detach() {
+        current.remove();
+    }
+
+    /**
+     * Marks the end of the conversion, fixing its wall time
+     */
+    public void finish() {
+        wallTime = (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    @Override public String getOntologyURI() {
+        return ontologyURI != null ? ontologyURI.toString() : null;
+    }
+
+    @Override public long getStartTime() {
+        return startTime;
+    }
+
+    @Override public long getWallTime() {
+        return wallTime != -1 ? wallTime : (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    @Override public synchronized List<PhaseMetrics> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<>(phases.values()));
+    }
+
+    /**
+     * Writes these metrics to the given stream as a JSON run report.  The stream is flushed, but not closed.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the report could not be written
+     */
+    public void writeReport(OutputStream out) throws IOException {
+        JsonGenerator generator = HierarchyFormat.JSON.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setPrettyPrinter(new DefaultPrettyPrinter());
+        generator.writeStartObject();
+        generator.writeStringField("ontology", getOntologyURI());
+        generator.writeNumberField("startTime", getStartTime());
+        generator.writeNumberField("wallTime", getWallTime());
+        generator.writeArrayFieldStart("phases");
+        for (PhaseMetrics phase : getPhases()) {
+            generator.writeStartObject();
+            generator.writeStringField("phase", phase.getName());
+            generator.writeNumberField("calls", phase.getCalls());
+            generator.writeNumberField("wallTime", phase.getWallTime());
+            generator.writeNumberField("cpuTime", phase.getCpuTime());
+            generator.writeNumberField("allocatedBytes", phase.getAllocatedBytes());
+            generator.writeNumberField("peakHeap", phase.getPeakHeap());
+            generator.writeNumberField("items", phase.getItems());
+            generator.writeNumberField("itemsPerSecond", phase.getItemsPerSecond());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, as
+     * "uk.ac.ebi.fgpt.owl2json:type=ConversionMetrics,ontology=&lt;uri&gt;", replacing the metrics of any previous
+     * conversion of the same ontology
+     */
+    public void publish() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("uk.ac.ebi.fgpt.owl2json:type=ConversionMetrics,ontology=" +
+                                                     ObjectName.quote(String.valueOf(ontologyURI)));
+            synchronized (ConversionMetrics.class) {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+            }
+        }
+        catch (JMException e) {
+            log.warn("Failed to publish conversion metrics for " + ontologyURI + " over JMX (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Folds the current peak heap use into every open phase
+     */
+    private void updatePeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        for (Phase phase : openPhases) {
+            phase.peakHeap = Math.max(phase.peakHeap, peak);
+        }
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    private static long getCpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long getAllocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+            if (hotspotThreads.isThreadAllocatedMemorySupported() && hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+                return hotspotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private synchronized void record(Phase phase, long wallNanos, long cpuNanos, long allocatedBytes) {
+        PhaseMetrics metrics = phases.get(phase.path);
+        metrics.calls++;
+        metrics.wallNanos += wallNanos;
+        // once a call can't be measured, neither can the total
+        metrics.cpuNanos = cpuNanos == -1 || metrics.cpuNanos == -1 ? -1 : metrics.cpuNanos + cpuNanos;
+        metrics.allocatedBytes = allocatedBytes == -1 || metrics.allocatedBytes == -1
+                ? -1
+                : metrics.allocatedBytes + allocatedBytes;
+        metrics.peakHeap = Math.max(metrics.peakHeap, phase.peakHeap);
+        metrics.items += phase.items;
+        log.debug("Phase '" + phase.path + "' took " + wallNanos / 1000000 + "ms " +
+                          "(" + (cpuNanos == -1 ? "?" : cpuNanos / 1000000) + "ms CPU, " +
+                          (allocatedBytes == -1 ? "?" : allocatedBytes / 1024 / 1024) + "MB allocated" +
+                          (phase.items > 0 ? ", " + phase.items + " items" : "") + ")");
+    }
+
+    /**
+     * A phase of a conversion, measured from when it is started until it is closed
+     */
+    public static class Phase implements AutoCloseable {
+        private final ConversionMetrics metrics;
+        private final String path;
+        private final long startNanos;
+        private final long startCpuNanos;
+        private final long startAllocatedBytes;
+
+        private long peakHeap;
+        private long items;
+
+        private Phase(ConversionMetrics metrics, String name) {
+            this.metrics = metrics;
+            if (metrics == null) {
+                this.path = name;
+                this.startNanos = 0;
+                this.startCpuNanos = -1;
+                this.startAllocatedBytes = -1;
+                return;
+            }
+
+            synchronized (metrics) {
+                this.path = metrics.openPhases.isEmpty() ? name : metrics.openPhases.peek().path + "/" + name;
+                // the enclosing phases keep the peak so far, so the peak can be reset for this one
+                metrics.updatePeakHeap();
+                resetPeakHeap();
+                metrics.openPhases.push(this);
+                // phases are listed in the order they first started, so enclosing phases come first
+                if (!metrics.phases.containsKey(path)) {
+                    metrics.phases.put(path, new PhaseMetrics(path));
+                }
+            }
+            this.startCpuNanos = getCpuTime();
+            this.startAllocatedBytes = getAllocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Sets the number of items (classes or nodes) processed in this phase, from which its throughput is derived
+         *
+         * @param items the number of items processed
+         */
+        public void setItems(long items) {
+            this.items = items;
+        }
+
+        @Override public void close() {
+            if (metrics == null) {
+                return;
+            }
+            long wallNanos = System.nanoTime() - startNanos;
+            long cpuNanos = startCpuNanos == -1 ? -1 : getCpuTime() - startCpuNanos;
+            long allocatedBytes = startAllocatedBytes == -1 ? -1 : getAllocatedBytes() - startAllocatedBytes;
+            synchronized (metrics) {
+                metrics.updatePeakHeap();
+                metrics.openPhases.remove(this);
+                metrics.record(this, wallNanos, cpuNanos, allocatedBytes);
+            }
+        }
+    }
+
+    /**
+     * The combined metrics of every call of a phase with the same path
+     */
+    public static class PhaseMetrics {
+        private final String name;
+        private int calls;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long peakHeap;
+        private long items;
+
+        private PhaseMetrics(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the path of this phase, e.g. "load/parse"
+         *
+         * @return the phase path
+         */
+        public String getName() {
+            return name;
+        }
+
+        public int getCalls() {
+            return calls;
+        }
+
+        /**
+         * Returns the wall time of this phase, in milliseconds
+         *
+         * @return the wall time
+         */
+        public long getWallTime() {
+            return wallNanos / 1000000;
+        }
+
+        /**
+         * Returns the CPU time of this phase on the converting thread, in milliseconds, or -1 if it could not be measured
+         *
+         * @return the CPU time
+         */
+        public long getCpuTime() {
+            return cpuNanos == -1 ? -1 : cpuNanos / 1000000;
+        }
+
+        /**
+         * Returns the bytes allocated by the converting thread during this phase, or -1 if they could not be measured
+         *
+         * @return the allocated bytes
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Returns the peak heap use during this phase, in bytes
+         *
+         * @return the peak heap use
+         */
+        public long getPeakHeap() {
+            return peakHeap;
+        }
+
+        /**
+         * Returns the number of classes or nodes processed in this phase, or 0 if it does not process either
+         *
+         * @return the number of items
+         */
+        public long getItems() {
+            return items;
+        }
+
+        /**
+         * Returns the number of classes or nodes processed per second of wall time
+         *
+         * @return the throughput of this phase
+         */
+        public double getItemsPerSecond() {
+            return wallNanos > 0 ? items * 1000000000.0 / wallNanos : 0;
+        }
+    }
+}
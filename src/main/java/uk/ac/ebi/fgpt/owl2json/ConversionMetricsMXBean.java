@@ -0,0 +1,40 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import java.util.List;
+
+/**
+ * The management interface of {@link ConversionMetrics}, through which the metrics of the last conversion of each
+ * ontology are exposed over JMX.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public interface ConversionMetricsMXBean {
+    /**
+     * Returns the URI of the converted ontology
+     *
+     * @return the ontology URI
+     */
+    String getOntologyURI();
+
+    /**
+     * Returns the time the conversion started, in milliseconds since the epoch
+     *
+     * @return the start time
+     */
+    long getStartTime();
+
+    /**
+     * Returns the wall time of the whole conversion, in milliseconds
+     *
+     * @return the wall time
+     */
+    long getWallTime();
+
+    /**
+     * Returns the metrics of each phase of the conversion, in the order the phases started
+     *
+     * @return the phase metrics
+     */
+    List<ConversionMetrics.PhaseMetrics> getPhases();
+}
@@ -0,0 +1,55 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The encodings an ontology hierarchy can be written in.  All share the same structure as the JSON output; Smile and
+ * CBOR are binary encodings that are smaller and faster to parse, for consumers that can read them.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public enum HierarchyFormat {
+    JSON(new JsonFactory(), ".json"),
+    SMILE(new SmileFactory(), ".sml"),
+    CBOR(new CBORFactory(), ".cbor");
+
+    private final JsonFactory factory;
+    private final String fileExtension;
+
+    private HierarchyFormat(JsonFactory factory, String fileExtension) {
+        this.factory = factory;
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * Returns the (thread-safe) factory for generators and parsers of this format
+     *
+     * @return the factory for this format
+     */
+    public JsonFactory getFactory() {
+        return factory;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Returns the format with the given name, ignoring case
+     *
+     * @param name the name of the format, e.g. "json", "smile" or "cbor"
+     * @return the format with this name
+     * @throws IllegalArgumentException if there is no format with this name
+     */
+    public static HierarchyFormat forName(String name) {
+        for (HierarchyFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown format '" + name + "': use json, smile or cbor");
+    }
+}
@@ -0,0 +1,255 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The state kept between incremental conversions of an ontology: where in the last JSON output the subtree under each
+ * node was written.  Subtrees are identified by a hash of their content (see {@link
+ * #hashSubtrees(OntologyHierarchyNode)}), so when a later release of the ontology is converted, any subtree with the
+ * same hash is unchanged and its JSON can be copied from the previous output rather than written again (see {@link
+ * IncrementalHierarchyWriter}).
+ * <p/>
+ * The state records the length and modification time of the output it describes, and should only be used if the
+ * output still matches (see {@link #matches(java.io.File)}).
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class IncrementalHierarchyState {
+    private static final int MAGIC = 0x4F324A49;
+    private static final int VERSION = 1;
+
+    private static final Comparator<byte[]> hashOrder = new Comparator<byte[]>() {
+        @Override public int compare(byte[] a, byte[] b) {
+            for (int i = 0; i < a.length && i < b.length; i++) {
+                if (a[i] != b[i]) {
+                    return (a[i] & 0xFF) - (b[i] & 0xFF);
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private final long outputLength;
+    private final long outputLastModified;
+    private final Map<String, long[]> fragments;
+
+    /**
+     * Creates the state describing an output file
+     *
+     * @param outputLength       the length of the output file
+     * @param outputLastModified the modification time of the output file
+     * @param fragments          the offset and length in the output of the subtree with each hash
+     */
+    public IncrementalHierarchyState(long outputLength, long outputLastModified, Map<String, long[]> fragments) {
+        this.outputLength = outputLength;
+        this.outputLastModified = outputLastModified;
+        this.fragments = fragments;
+    }
+
+    public long getOutputLength() {
+        return outputLength;
+    }
+
+    public long getOutputLastModified() {
+        return outputLastModified;
+    }
+
+    public Map<String, long[]> getFragments() {
+        return Collections.unmodifiableMap(fragments);
+    }
+
+    /**
+     * Returns the offset and length, in bytes, of the JSON for the subtree with the given hash in the output this state
+     * describes, or null if no such subtree was written
+     *
+     * @param hash the hash of the subtree
+     * @return a two element array of the offset and length of the subtree, or null
+     */
+    public long[] getFragment(String hash) {
+        return fragments.get(hash);
+    }
+
+    /**
+     * Returns true if the given file is the output described by this state, and has not been modified since
+     *
+     * @param outputFile the output file to check
+     * @return true if the output is unchanged
+     */
+    public boolean matches(File outputFile) {
+        return outputFile.exists() &&
+                outputFile.length() == outputLength &&
+                outputFile.lastModified() == outputLastModified;
+    }
+
+    /**
+     * Hashes the subtree under every distinct node of the given hierarchy.  The hash of a node covers its URI, name and
+     * sizes, and the hashes of its children, so two subtrees have the same hash only if they would be written the same
+     * way.  Child hashes are combined in sorted order, so the hash doesn't depend on the order in which children
+     * happen to be iterated, and is stable between runs.
+     *
+     * @param rootNode the root of the (counted) hierarchy to hash
+     * @return the hex encoded hash of the subtree under each node, indexed by node
+     */
+    public static Map<OntologyHierarchyNode, String> hashSubtrees(OntologyHierarchyNode rootNode) {
+        PostOrderedHierarchy hierarchy = PostOrderedHierarchy.build(rootNode);
+        int[] childOffsets = hierarchy.getChildOffsets();
+        int[] childIds = hierarchy.getChildIds();
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is not supported by this JVM", e);
+        }
+
+        // post order, so the hashes of all children are known before their parents are hashed
+        byte[][] hashes = new byte[hierarchy.size()][];
+        Map<OntologyHierarchyNode, String> hexHashes = new IdentityHashMap<>(hierarchy.size() * 4 / 3 + 1);
+        for (int id = 0; id < hierarchy.size(); id++) {
+            OntologyHierarchyNode node = hierarchy.getNode(id);
+            updateString(digest, hierarchy.getURI(id));
+            updateString(digest, node.getName());
+            updateInt(digest, node.getSize());
+            int[] sizes = node.getSizes();
+            updateInt(digest, sizes != null ? sizes.length : -1);
+            if (sizes != null) {
+                for (int size : sizes) {
+                    updateInt(digest, size);
+                }
+            }
+
+            byte[][] childHashes = new byte[childOffsets[id + 1] - childOffsets[id]][];
+            for (int i = 0; i < childHashes.length; i++) {
+                childHashes[i] = hashes[childIds[childOffsets[id] + i]];
+            }
+            Arrays.sort(childHashes, hashOrder);
+            updateInt(digest, childHashes.length);
+            for (byte[] childHash : childHashes) {
+                digest.update(childHash);
+            }
+
+            hashes[id] = digest.digest();
+            hexHashes.put(node, toHex(hashes[id]));
+        }
+        return hexHashes;
+    }
+
+    /**
+     * Reads the state from the given file
+     *
+     * @param stateFile the file to read
+     * @return the state read from this file
+     * @throws IOException if the file could not be read, or is not an incremental state file
+     */
+    public static IncrementalHierarchyState read(File stateFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(stateFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(stateFile + " is not an incremental state file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(stateFile + " is a version " + version + " incremental state file, " +
+                                              "expected version " + VERSION);
+            }
+
+            long outputLength = buffer.getLong();
+            long outputLastModified = buffer.getLong();
+            int fragmentCount = buffer.getInt();
+            Map<String, long[]> fragments = new HashMap<>(fragmentCount * 4 / 3 + 1);
+            byte[] hash = new byte[20];
+            for (int i = 0; i < fragmentCount; i++) {
+                buffer.get(hash);
+                fragments.put(toHex(hash), new long[]{buffer.getLong(), buffer.getLong()});
+            }
+            return new IncrementalHierarchyState(outputLength, outputLastModified, fragments);
+        }
+        catch (RuntimeException e) {
+            // buffer underflows etc - treat any as a corrupt state file
+            throw new IOException(stateFile + " is not a valid incremental state file", e);
+        }
+    }
+
+    /**
+     * Writes this state to the given file.  The state is written to a temporary file first and then moved into place,
+     * so a concurrent reader will never see a partially written state.
+     *
+     * @param stateFile the file to write to
+     * @throws IOException if the state could not be written
+     */
+    public void write(File stateFile) throws IOException {
+        File tempFile = new File(stateFile.getAbsoluteFile().getParentFile(), stateFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(outputLength);
+            out.writeLong(outputLastModified);
+            out.writeInt(fragments.size());
+            for (Map.Entry<String, long[]> fragment : fragments.entrySet()) {
+                out.write(fromHex(fragment.getKey()));
+                out.writeLong(fragment.getValue()[0]);
+                out.writeLong(fragment.getValue()[1]);
+            }
+        }
+        Files.move(tempFile.toPath(),
+                   stateFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void updateString(MessageDigest digest, String string) {
+        if (string == null) {
+            updateInt(digest, -1);
+        }
+        else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            updateInt(digest, bytes.length);
+            digest.update(bytes);
+        }
+    }
+
+    private static void updateInt(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ((Character.digit(hex.charAt(i * 2), 16) << 4) +
+                    Character.digit(hex.charAt(i * 2 + 1), 16));
+        }
+        return bytes;
+    }
+}
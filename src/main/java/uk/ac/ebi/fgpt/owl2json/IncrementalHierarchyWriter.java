@@ -0,0 +1,261 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes an ontology hierarchy as JSON, reusing the output of a previous conversion wherever possible.  Each subtree
+ * whose hash (see {@link IncrementalHierarchyState#hashSubtrees(OntologyHierarchyNode)}) was written to the previous
+ * output is copied, byte for byte, from the previous output instead of being written again; only subtrees that have
+ * changed since the previous conversion are written node by node.  Between releases of a large ontology, most of the
+ * hierarchy is usually unchanged, so most of the output can be copied.
+ * <p/>
+ * The JSON written is equivalent to that written by {@link OntologyHierarchyBuilder#writeOntologyHierarchyAsJson(OntologyHierarchyNode,
+ * java.io.OutputStream)}, although children copied from the previous output may be listed in a different order.  The
+ * previous output must not be overwritten while this writer is writing, so the new output should be written to a
+ * different file and moved into place afterwards.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class IncrementalHierarchyWriter {
+    private final IncrementalHierarchyState previousState;
+    private final File previousOutputFile;
+
+    private int reusedSubtrees;
+    private int writtenNodes;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    protected Logger getLog() {
+        return log;
+    }
+
+    /**
+     * Creates a writer that writes every node, with no previous output to reuse
+     */
+    public IncrementalHierarchyWriter() {
+        this(null, null);
+    }
+
+    /**
+     * Creates a writer that reuses the given previous output
+     *
+     * @param previousState      the state of the previous conversion, or null
+     * @param previousOutputFile the output of the previous conversion, which the state must match, or null
+     */
+    public IncrementalHierarchyWriter(IncrementalHierarchyState previousState, File previousOutputFile) {
+        this.previousState = previousState;
+        this.previousOutputFile = previousOutputFile;
+    }
+
+    /**
+     * Returns the number of subtrees copied from the previous output by the last write
+     *
+     * @return the number of reused subtrees
+     */
+    public int getReusedSubtrees() {
+        return reusedSubtrees;
+    }
+
+    /**
+     * Returns the number of nodes written without reusing the previous output by the last write
+     *
+     * @return the number of written nodes
+     */
+    public int getWrittenNodes() {
+        return writtenNodes;
+    }
+
+    /**
+     * Writes the given hierarchy as UTF-8 encoded JSON to the given stream, and returns where the subtree under each
+     * node was written.  The stream is flushed, but not closed.
+     *
+     * @param rootNode the root of the hierarchy to write
+     * @param out      the stream to write to
+     * @return the offset and length of the subtree with each hash, in the output (see {@link
+     *         IncrementalHierarchyState#getFragment(String)})
+     * @throws IOException if the previous output could not be read, or the stream could not be written to
+     */
+    public Map<String, long[]> write(OntologyHierarchyNode rootNode, OutputStream out) throws IOException {
+        reusedSubtrees = 0;
+        writtenNodes = 0;
+        Map<OntologyHierarchyNode, String> hashes = IncrementalHierarchyState.hashSubtrees(rootNode);
+        Map<String, long[]> fragments = new HashMap<>(hashes.size() * 4 / 3 + 1);
+
+        ByteBuffer previousOutput = null;
+        if (previousState != null && previousOutputFile != null) {
+            try (RandomAccessFile raf = new RandomAccessFile(previousOutputFile, "r");
+                 FileChannel channel = raf.getChannel()) {
+                previousOutput = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        CountingOutputStream counted = new CountingOutputStream(out);
+        JsonGenerator generator = HierarchyFormat.JSON.getFactory().createGenerator(counted, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // the generator is flushed after every node to find offsets, which shouldn't flush the underlying stream
+        generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+
+        // depth first, with the nodes still being written and the offset each started at
+        Deque<OntologyHierarchyNode> stack = new ArrayDeque<>();
+        Deque<Iterator<OntologyHierarchyNode>> stackChildren = new ArrayDeque<>();
+        Deque<Long> stackStarts = new ArrayDeque<>();
+        writeOrReuse(generator, counted, rootNode, hashes, fragments, previousOutput, stack, stackChildren, stackStarts);
+        while (!stack.isEmpty()) {
+            if (stackChildren.peek().hasNext()) {
+                writeOrReuse(generator, counted, stackChildren.peek().next(), hashes, fragments, previousOutput,
+                             stack, stackChildren, stackStarts);
+            }
+            else {
+                OntologyHierarchyNode node = stack.pop();
+                stackChildren.pop();
+                long start = stackStarts.pop();
+                generator.writeEndArray();
+                OntologyHierarchyBuilder.writeNodeEnd(generator, node);
+                generator.flush();
+                putFragment(fragments, hashes.get(node), start, counted.getCount() - start);
+            }
+        }
+        generator.close();
+        out.flush();
+
+        getLog().debug("Reused " + reusedSubtrees + " unchanged subtrees and wrote " + writtenNodes + " nodes " +
+                               "for the hierarchy under " + rootNode.getName());
+        return fragments;
+    }
+
+    private void writeOrReuse(JsonGenerator generator,
+                              CountingOutputStream counted,
+                              OntologyHierarchyNode node,
+                              Map<OntologyHierarchyNode, String> hashes,
+                              Map<String, long[]> fragments,
+                              ByteBuffer previousOutput,
+                              Deque<OntologyHierarchyNode> stack,
+                              Deque<Iterator<OntologyHierarchyNode>> stackChildren,
+                              Deque<Long> stackStarts) throws IOException {
+        long[] previousFragment = previousOutput != null ? previousState.getFragment(hashes.get(node)) : null;
+        if (previousFragment != null && previousFragment[0] + previousFragment[1] <= previousOutput.limit()) {
+            // an empty raw value writes any separator this value needs, so the copied bytes can follow it directly
+            generator.writeRawValue("");
+            generator.flush();
+            long start = counted.getCount();
+            copy(previousOutput, previousFragment[0], previousFragment[1], counted);
+            putFragment(fragments, hashes.get(node), start, previousFragment[1]);
+            carryOverFragments(node, previousFragment, start, hashes, fragments);
+            reusedSubtrees++;
+        }
+        else {
+            // the node starts after the separator from the previous value in this array, if there is one
+            generator.flush();
+            JsonStreamContext context = generator.getOutputContext();
+            long start = counted.getCount() + (context.inArray() && context.getEntryCount() > 0 ? 1 : 0);
+            OntologyHierarchyBuilder.writeNodeHead(generator, node);
+            if (node.getChildren().isEmpty()) {
+                OntologyHierarchyBuilder.writeNodeEnd(generator, node);
+                generator.flush();
+                putFragment(fragments, hashes.get(node), start, counted.getCount() - start);
+            }
+            else {
+                generator.writeArrayFieldStart("children");
+                stack.push(node);
+                stackChildren.push(node.getChildren().iterator());
+                stackStarts.push(start);
+            }
+            writtenNodes++;
+        }
+    }
+
+    /**
+     * Records where the subtrees under a node copied from the previous output now are, so they can be reused by the
+     * next conversion even if the copied node itself changes.  Only subtrees that were written within the copied
+     * fragment of the previous output can be carried over.
+     */
+    private void carryOverFragments(OntologyHierarchyNode node,
+                                    long[] previousFragment,
+                                    long start,
+                                    Map<OntologyHierarchyNode, String> hashes,
+                                    Map<String, long[]> fragments) {
+        Set<OntologyHierarchyNode> visited =
+                Collections.newSetFromMap(new IdentityHashMap<OntologyHierarchyNode, Boolean>());
+        Deque<OntologyHierarchyNode> nodes = new ArrayDeque<>(node.getChildren());
+        while (!nodes.isEmpty()) {
+            OntologyHierarchyNode descendant = nodes.pop();
+            String hash = hashes.get(descendant);
+            if (!visited.add(descendant) || fragments.containsKey(hash)) {
+                continue;
+            }
+            long[] descendantFragment = previousState.getFragment(hash);
+            if (descendantFragment != null &&
+                    descendantFragment[0] >= previousFragment[0] &&
+                    descendantFragment[0] + descendantFragment[1] <= previousFragment[0] + previousFragment[1]) {
+                putFragment(fragments, hash, start + descendantFragment[0] - previousFragment[0],
+                            descendantFragment[1]);
+            }
+            nodes.addAll(descendant.getChildren());
+        }
+    }
+
+    private static void putFragment(Map<String, long[]> fragments, String hash, long start, long length) {
+        // keep the first place each subtree was written
+        if (!fragments.containsKey(hash)) {
+            fragments.put(hash, new long[]{start, length});
+        }
+    }
+
+    private static void copy(ByteBuffer source, long start, long length, OutputStream out) throws IOException {
+        ByteBuffer fragment = source.duplicate();
+        fragment.position((int) start);
+        fragment.limit((int) (start + length));
+        byte[] buffer = new byte[(int) Math.min(length, 65536)];
+        while (fragment.hasRemaining()) {
+            int read = Math.min(buffer.length, fragment.remaining());
+            fragment.get(buffer, 0, read);
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * An output stream that counts the bytes written through it
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        private long getCount() {
+            return count;
+        }
+
+        @Override public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
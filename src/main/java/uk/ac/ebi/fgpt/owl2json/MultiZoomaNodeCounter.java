@@ -0,0 +1,116 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeMultiCounter} that counts data annotations to ontology terms
+ * from several ZOOMA datasources, fetching the counts from each datasource concurrently.  As with {@link
+ * uk.ac.ebi.fgpt.owl2json.ZoomaNodeCounter}, the size of each node in each datasource is the number of annotations to
+ * that term plus the sizes of all of its children.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class MultiZoomaNodeCounter implements OntologyHierarchyNodeMultiCounter {
+    private final String[] datasetNames;
+    private final ZoomaNodeCounter[] counters;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    protected Logger getLog() {
+        return log;
+    }
+
+    public MultiZoomaNodeCounter(List<URI> zoomaDatasources) {
+        this(zoomaDatasources, null);
+    }
+
+    /**
+     * Creates a counter for the given datasources, using the given cache (which may be null) to avoid querying ZOOMA
+     * every time
+     *
+     * @param zoomaDatasources the datasources to count data annotations from
+     * @param cache            the cache of ZOOMA responses to use, or null to always query ZOOMA
+     */
+    public MultiZoomaNodeCounter(List<URI> zoomaDatasources, ZoomaCountCache cache) {
+        this(ZoomaNodeCounter.getDefaultZoomaLocation(), zoomaDatasources, cache);
+    }
+
+    /**
+     * Creates a counter for the given datasources, querying the ZOOMA instance at the given location and using the
+     * given cache (which may be null) to avoid querying ZOOMA every time
+     *
+     * @param zoomaLocation    the base URI of the ZOOMA instance to query, e.g. http://www.ebi.ac.uk/fgpt/zooma
+     * @param zoomaDatasources the datasources to count data annotations from
+     * @param cache            the cache of ZOOMA responses to use, or null to always query ZOOMA
+     */
+    public MultiZoomaNodeCounter(final URI zoomaLocation, List<URI> zoomaDatasources, final ZoomaCountCache cache) {
+        if (zoomaDatasources.isEmpty()) {
+            throw new IllegalArgumentException("At least one ZOOMA datasource is required");
+        }
+        this.datasetNames = new String[zoomaDatasources.size()];
+        this.counters = new ZoomaNodeCounter[zoomaDatasources.size()];
+
+        ExecutorService executor = Executors.newFixedThreadPool(zoomaDatasources.size());
+        try {
+            List<Future<ZoomaNodeCounter>> futures = new ArrayList<>();
+            for (final URI zoomaDatasource : zoomaDatasources) {
+                futures.add(executor.submit(new Callable<ZoomaNodeCounter>() {
+                    @Override public ZoomaNodeCounter call() {
+                        return new ZoomaNodeCounter(zoomaLocation, zoomaDatasource, cache);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                datasetNames[i] = zoomaDatasources.get(i).toString();
+                counters[i] = futures.get(i).get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted whilst fetching counts from ZOOMA", e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Unable to create a MultiZoomaNodeCounter - " + e.getCause().getMessage(),
+                                       e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        getLog().debug("Fetched counts for " + counters.length + " ZOOMA datasources");
+    }
+
+    @Override public String[] getDatasetNames() {
+        return datasetNames.clone();
+    }
+
+    @Override public int[] countAll(OntologyHierarchyNode node) {
+        int[] sizes = new int[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            sizes[i] = counters[i].getDirectCount(node);
+        }
+
+        // total this and all child terms, in each dataset
+        for (OntologyHierarchyNode childNode : node.getChildren()) {
+            int[] childSizes = childNode.getSizes();
+            for (int i = 0; i < counters.length; i++) {
+                sizes[i] += childSizes != null ? childSizes[i] : 0;
+            }
+        }
+        return sizes;
+    }
+
+    @Override public int count(OntologyHierarchyNode node) {
+        return countAll(node)[0];
+    }
+}
@@ -0,0 +1,349 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Driver class for converting a batch of ontologies in a single JVM.  The batch is described by a manifest file, where
+ * each line holds the arguments for one conversion exactly as they would be passed to {@link OWL2JSONDriver} (e.g.
+ * <code>-o http://www.ebi.ac.uk/efo -of efo.owl -f efo.json -d 3</code>).  Blank lines and lines starting with '#' are
+ * ignored, and arguments containing spaces can be enclosed in double quotes.
+ * <p/>
+ * Conversions run in parallel on a bounded number of threads, and each conversion must also reserve its estimated
+ * memory from a fixed budget before it starts.  The estimate is the size of the local ontology file multiplied by an
+ * expansion factor; ontologies loaded from their URI are assumed to need the whole budget.  This means several small
+ * ontologies can be converted at once, while large ones run alone.  Each conversion reports its own status, and a
+ * failed conversion does not stop the rest of the batch.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class OWL2JSONBatchDriver {
+    private static final int DEFAULT_EXPANSION = 20;
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private File _manifestFile;
+    private int _jobThreads;
+    private int _memoryBudget;
+    private int _expansion;
+
+    public static void main(String[] args) {
+        try {
+            OWL2JSONBatchDriver driver = new OWL2JSONBatchDriver();
+            int statusCode = driver.parseArguments(args);
+            if (statusCode == 0) {
+                List<BatchJob> jobs = driver.readManifest(driver._manifestFile);
+                driver.runBatch(jobs);
+                int failures = driver.reportBatch(jobs);
+                System.exit(failures == 0 ? 0 : 1);
+            }
+            else {
+                System.exit(statusCode);
+            }
+        }
+        catch (Exception e) {
+            System.err.println("OWL2JSON batch did not complete successfully: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Configures this driver from the given POSIX style arguments.
+     *
+     * @param args the arguments to configure this driver with
+     * @return 0 if the arguments were valid, or a non-zero status code if they were not (and help has been printed)
+     */
+    public int parseArguments(String[] args) {
+        CommandLineParser parser = new GnuParser();
+        HelpFormatter help = new HelpFormatter();
+        Options options = bindOptions();
+
+        int parseArgs = 0;
+        try {
+            CommandLine cl = parser.parse(options, args, true);
+
+            // check for mode help option
+            if (cl.hasOption("")) {
+                // print out mode help
+                help.printHelp("owl2json-batch", options, true);
+                parseArgs += 1;
+            }
+            else {
+                // check -m required option
+                _manifestFile = new File(cl.getOptionValue("m"));
+                System.out.println("Converting the ontologies listed in '" + _manifestFile + "'");
+
+                // check jobs option - optional, defaults to the number of processors
+                if (cl.hasOption("j")) {
+                    _jobThreads = Integer.parseInt(cl.getOptionValue("j"));
+                }
+                else {
+                    _jobThreads = Runtime.getRuntime().availableProcessors();
+                }
+                System.out.println("Running up to " + _jobThreads + " conversions at once");
+
+                // check memory option - optional, defaults to 80% of the maximum heap
+                if (cl.hasOption("mm")) {
+                    _memoryBudget = Integer.parseInt(cl.getOptionValue("mm"));
+                }
+                else {
+                    _memoryBudget = (int) (Runtime.getRuntime().maxMemory() / MEGABYTE * 8 / 10);
+                }
+                System.out.println("Using a memory budget of " + _memoryBudget + "MB");
+
+                // check expansion option - optional, defaults to 20
+                if (cl.hasOption("x")) {
+                    _expansion = Integer.parseInt(cl.getOptionValue("x"));
+                }
+                else {
+                    _expansion = DEFAULT_EXPANSION;
+                }
+
+                if (_jobThreads < 1 || _memoryBudget < 1 || _expansion < 1) {
+                    throw new ParseException("jobs, memory and expansion must all be at least 1");
+                }
+            }
+        }
+        catch (ParseException | NumberFormatException e) {
+            System.err.println("Failed to read supplied arguments (" + e.getMessage() + ")");
+            help.printHelp("owl2json-batch", options, true);
+            parseArgs += 1;
+        }
+        return parseArgs;
+    }
+
+    private static Options bindOptions() {
+        Options options = new Options();
+
+        // help
+        Option helpOption = new Option("h", "help", false, "Print the help");
+        options.addOption(helpOption);
+
+        // add manifest option
+        Option manifestOption = new Option(
+                "m",
+                "manifest",
+                true,
+                "Manifest file - a file listing the conversions to run, one per line, each given as the arguments to a single owl2json conversion.");
+        manifestOption.setRequired(true);
+        options.addOption(manifestOption);
+
+        // add scheduling options
+        Option jobsOption = new Option(
+                "j",
+                "jobs",
+                true,
+                "Jobs - the maximum number of conversions to run at once.  Defaults to the number of processors.  Optional.");
+        jobsOption.setRequired(false);
+        options.addOption(jobsOption);
+        Option memoryOption = new Option(
+                "mm",
+                "memory",
+                true,
+                "Memory budget - the memory, in MB, shared between running conversions.  Defaults to 80% of the maximum heap.  Optional.");
+        memoryOption.setRequired(false);
+        options.addOption(memoryOption);
+        Option expansionOption = new Option(
+                "x",
+                "expansion",
+                true,
+                "Expansion - the memory needed to convert an ontology, as a multiple of the size of its file.  Defaults to " +
+                        DEFAULT_EXPANSION + ".  Optional.");
+        expansionOption.setRequired(false);
+        options.addOption(expansionOption);
+        return options;
+    }
+
+    /**
+     * Reads the conversions listed in the given manifest file.  Lines with invalid arguments are returned as jobs that
+     * have already failed, so that they are reported along with the rest of the batch.
+     *
+     * @param manifestFile the manifest to read
+     * @return the jobs in the manifest, in the order they are listed
+     * @throws IOException if the manifest could not be read
+     */
+    public List<BatchJob> readManifest(File manifestFile) throws IOException {
+        List<BatchJob> jobs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                BatchJob job = new BatchJob(lineNumber, line);
+                try {
+                    OWL2JSONDriver driver = new OWL2JSONDriver();
+                    if (driver.parseArguments(splitArguments(line)) == 0) {
+                        job.setDriver(driver, estimateMemory(driver));
+                    }
+                    else {
+                        job.fail(new IllegalArgumentException("Invalid arguments"));
+                    }
+                }
+                catch (Exception e) {
+                    job.fail(e);
+                }
+                jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs all pending jobs, blocking until every job has either succeeded or failed.
+     *
+     * @param jobs the jobs to run
+     * @throws InterruptedException if interrupted while waiting for the jobs to finish
+     */
+    public void runBatch(List<BatchJob> jobs) throws InterruptedException {
+        // a fair semaphore, so large jobs queue for the memory they need instead of being overtaken indefinitely
+        final Semaphore memory = new Semaphore(_memoryBudget, true);
+        final AtomicInteger finished = new AtomicInteger();
+        final int total = jobs.size();
+
+        ExecutorService executor = Executors.newFixedThreadPool(_jobThreads);
+        try {
+            for (final BatchJob job : jobs) {
+                if (job.getStatus() != BatchJob.Status.PENDING) {
+                    report(job, finished.incrementAndGet(), total);
+                    continue;
+                }
+                executor.submit(new Runnable() {
+                    @Override public void run() {
+                        int permits = Math.min(job.getMemoryEstimate(), _memoryBudget);
+                        try {
+                            memory.acquire(permits);
+                        }
+                        catch (InterruptedException e) {
+                            job.fail(e);
+                            report(job, finished.incrementAndGet(), total);
+                            return;
+                        }
+                        try {
+                            job.run();
+                        }
+                        finally {
+                            memory.release(permits);
+                        }
+                        report(job, finished.incrementAndGet(), total);
+                    }
+                });
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            System.out.println("Waiting for " + (total - finished.get()) + " conversions to finish...");
+        }
+    }
+
+    /**
+     * Prints a summary of the given jobs.
+     *
+     * @param jobs the jobs to summarise
+     * @return the number of jobs that failed
+     */
+    public int reportBatch(List<BatchJob> jobs) {
+        int failures = 0;
+        System.out.println("Batch complete:");
+        for (BatchJob job : jobs) {
+            System.out.println("  " + describe(job));
+            if (job.getStatus() != BatchJob.Status.SUCCEEDED) {
+                failures++;
+            }
+        }
+        System.out.println((jobs.size() - failures) + " of " + jobs.size() + " conversions succeeded");
+        return failures;
+    }
+
+    private int estimateMemory(OWL2JSONDriver driver) {
+        File ontologyFile = driver.getOntologyFile();
+        if (ontologyFile == null || !ontologyFile.exists()) {
+            // no idea how big this ontology is, so make sure it runs alone
+            return _memoryBudget;
+        }
+        long estimate = (ontologyFile.length() * _expansion + MEGABYTE - 1) / MEGABYTE;
+        return (int) Math.max(1, Math.min(estimate, _memoryBudget));
+    }
+
+    private synchronized void report(BatchJob job, int finished, int total) {
+        System.out.println("[" + finished + "/" + total + "] " + describe(job));
+        if (job.getFailure() != null) {
+            job.getFailure().printStackTrace();
+        }
+    }
+
+    private String describe(BatchJob job) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(job.getStatus()).append(" (line ").append(job.getLineNumber()).append(") ");
+        sb.append(job.getDriver() != null ? job.getDriver().getOntologyURI() : job.getArguments());
+        if (job.getStatus() == BatchJob.Status.SUCCEEDED || job.getStatus() == BatchJob.Status.FAILED) {
+            if (job.getElapsedTime() != -1) {
+                sb.append(" in ").append(job.getElapsedTime()).append("ms");
+            }
+            if (job.getFailure() != null) {
+                sb.append(": ").append(job.getFailure().getMessage());
+            }
+        }
+        return sb.toString();
+    }
+
+    static String[] splitArguments(String line) {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder current = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                if (current == null) {
+                    current = new StringBuilder();
+                }
+            }
+            else if (Character.isWhitespace(c) && !quoted) {
+                if (current != null) {
+                    arguments.add(current.toString());
+                    current = null;
+                }
+            }
+            else {
+                if (current == null) {
+                    current = new StringBuilder();
+                }
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote in '" + line + "'");
+        }
+        if (current != null) {
+            arguments.add(current.toString());
+        }
+        return arguments.toArray(new String[arguments.size()]);
+    }
+}
@@ -1,5 +1,7 @@
 package uk.ac.ebi.fgpt.owl2json;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
@@ -9,11 +11,32 @@ import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Driver class for invoking OWL to JSON conversion.  Uses POSIX style arguments.
@@ -22,44 +45,51 @@ import java.net.URI;
  * @date 01/07/13
  */
 public class OWL2JSONDriver {
-    private static File _outputFile;
+    private File _outputFile;
 
-    private static File _ontologyFile;
-    private static URI _ontologyURI;
-    private static URI _synonymURI;
+    private File _ontologyFile;
+    private URI _ontologyURI;
+    private URI _synonymURI;
+    private File _snapshotDirectory;
+    private boolean _lazy;
 
-    private static int _maxDepth;
-    private static int _minSize;
+    private int _maxDepth;
+    private int _minSize;
+    private List<String> _resolutions;
+    private int _shardDepth = -1;
+    private HierarchyFormat _format = HierarchyFormat.JSON;
+    private boolean _compareFormats;
+    private boolean _flat;
+    private File _incrementalStateFile;
 
-    private static boolean _useReasoning;
-    private static boolean _useZooma;
-    private static URI _zoomaDatasource;
+    private boolean _watch;
+    private long _watchDelay;
+
+    private File _reportFile;
+
+    private boolean _useReasoning;
+    private String _reasonerName;
+    private int _extractionThreads;
+    private boolean _topDownExtraction;
+    private boolean _useZooma;
+    private URI _zoomaDatasource;
+    private List<URI> _zoomaDatasources = Collections.emptyList();
+    private File _zoomaCacheDirectory;
+    private long _zoomaCacheTTL;
+    private boolean _zoomaOffline;
 
     public static void main(String[] args) {
         try {
-            int statusCode = parseArguments(args);
+            OWL2JSONDriver driver = new OWL2JSONDriver();
+            int statusCode = driver.parseArguments(args);
             if (statusCode == 0) {
                 try {
-                    OWL2JSONDriver driver = new OWL2JSONDriver();
-
-                    OntologyLoader loader;
-                    if (_ontologyFile != null) {
-                        loader = driver.createOntologyLoader(_ontologyFile, _ontologyURI, _synonymURI, _useReasoning);
-                    }
-                    else {
-                        loader = driver.createOntologyLoader(_ontologyURI, _synonymURI, _useReasoning);
-                    }
-
-                    OntologyHierarchyNodeCounter counter;
-                    if (_zoomaDatasource != null) {
-                        counter = driver.createOntologyHierarchyNodeCounter(_zoomaDatasource);
+                    if (driver.isWatching()) {
+                        driver.watch();
                     }
                     else {
-                        counter = driver.createOntologyHierarchyNodeCounter(_useZooma);
+                        driver.convert();
                     }
-
-                    String jsonString = driver.generateJSON(loader, counter, _maxDepth, _minSize);
-                    driver.saveJSON(jsonString, _outputFile);
                 }
                 catch (Exception e) {
                     e.printStackTrace();
@@ -77,7 +107,207 @@ public class OWL2JSONDriver {
         }
     }
 
-    private static int parseArguments(String[] args) throws IOException {
+    /**
+     * Runs the conversion configured by the arguments last passed to {@link #parseArguments(String[])}.
+     *
+     * @throws Exception if the ontology could not be loaded, or the JSON could not be written
+     */
+    public void convert() throws Exception {
+        convert(createConfiguredNodeCounter());
+    }
+
+    /**
+     * Runs the conversion configured by the arguments last passed to {@link #parseArguments(String[])}, and then
+     * watches the local ontology file, running the conversion again each time the file changes.  The JVM, and the node
+     * counter (with any counts it has fetched), are kept between conversions, so each one only pays for loading the
+     * ontology and writing the output.  Bursts of changes, such as an editor saving several times, are coalesced by
+     * waiting until the file has been quiet for the configured delay.  Failed conversions (for example, of a file saved
+     * part way through an edit) are reported, and the previous output is left in place.
+     * <p/>
+     * This method returns only if the directory containing the ontology file can no longer be watched, or the thread is
+     * interrupted.
+     *
+     * @throws Exception if the first conversion failed, or the ontology file could not be watched
+     */
+    public void watch() throws Exception {
+        if (_ontologyFile == null) {
+            throw new IllegalStateException("Watch mode needs a local ontology file (use -of)");
+        }
+        OntologyHierarchyNodeCounter counter = createConfiguredNodeCounter();
+        convert(counter);
+
+        Path ontologyPath = _ontologyFile.getAbsoluteFile().toPath();
+        Path directory = ontologyPath.getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            // editors often save by writing a new file and renaming it over the old one, so watch creation too
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            System.out.println("Watching '" + _ontologyFile + "' for changes");
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = isChanged(key, ontologyPath.getFileName());
+                if (!key.reset()) {
+                    System.out.println("Can no longer watch '" + directory + "', stopping");
+                    return;
+                }
+                if (!changed) {
+                    continue;
+                }
+
+                // wait for the changes to settle before converting
+                while ((key = watcher.poll(_watchDelay, TimeUnit.MILLISECONDS)) != null) {
+                    isChanged(key, ontologyPath.getFileName());
+                    key.reset();
+                }
+
+                System.out.println("'" + _ontologyFile + "' has changed, converting again...");
+                long start = System.currentTimeMillis();
+                try {
+                    convert(counter);
+                    System.out.println("Converted '" + _ontologyFile + "' in " +
+                                               (System.currentTimeMillis() - start) + "ms");
+                }
+                catch (Exception e) {
+                    System.err.println("Failed to convert '" + _ontologyFile + "' (" + e.getMessage() + "), " +
+                                               "the previous output has been kept");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    public boolean isWatching() {
+        return _watch;
+    }
+
+    private void convert(OntologyHierarchyNodeCounter counter) throws Exception {
+        if (_outputFile == null) {
+            throw new IllegalStateException("No output file has been supplied (use -f)");
+        }
+        ConversionMetrics metrics = new ConversionMetrics(_ontologyURI);
+        metrics.attach();
+        try {
+            OntologyLoader loader;
+            ConversionMetrics.Phase phase = ConversionMetrics.startPhase("load");
+            try {
+                loader = createConfiguredOntologyLoader();
+            }
+            finally {
+                phase.close();
+            }
+            writeJSON(loader,
+                      counter,
+                      _maxDepth,
+                      _minSize,
+                      _outputFile,
+                      _resolutions);
+        }
+        finally {
+            metrics.detach();
+        }
+        metrics.finish();
+        metrics.publish();
+        if (_reportFile != null) {
+            writeReport(metrics, _reportFile);
+            System.out.println("Wrote run report to '" + _reportFile + "'");
+        }
+    }
+
+    /**
+     * Consumes the events of the given watch key, returning true if any of them are for the file with the given name
+     */
+    private boolean isChanged(WatchKey key, Path fileName) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // on overflow, events may have been lost, so assume the file has changed
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Creates and initializes an ontology loader configured by the arguments last passed to {@link
+     * #parseArguments(String[])}.
+     *
+     * @return the initialized ontology loader
+     * @throws Exception if the ontology could not be loaded
+     */
+    public OntologyLoader createConfiguredOntologyLoader() throws Exception {
+        return createOntologyLoader(_ontologyFile,
+                                    _ontologyURI,
+                                    _synonymURI,
+                                    _useReasoning,
+                                    _reasonerName,
+                                    _extractionThreads,
+                                    _topDownExtraction,
+                                    _snapshotDirectory,
+                                    _lazy);
+    }
+
+    /**
+     * Creates the node counter configured by the arguments last passed to {@link #parseArguments(String[])}.
+     *
+     * @return the node counter
+     */
+    public OntologyHierarchyNodeCounter createConfiguredNodeCounter() {
+        ZoomaCountCache cache = _zoomaCacheDirectory != null
+                ? new ZoomaCountCache(_zoomaCacheDirectory, _zoomaCacheTTL, _zoomaOffline)
+                : null;
+        if (_zoomaDatasources.size() > 1) {
+            return new MultiZoomaNodeCounter(_zoomaDatasources, cache);
+        }
+        else if (_useZooma && cache != null) {
+            if (_zoomaDatasource != null) {
+                return new ZoomaNodeCounter(_zoomaDatasource, cache);
+            }
+            else {
+                return new ZoomaNodeCounter(cache);
+            }
+        }
+        else if (_zoomaDatasource != null) {
+            return createOntologyHierarchyNodeCounter(_zoomaDatasource);
+        }
+        else {
+            return createOntologyHierarchyNodeCounter(_useZooma);
+        }
+    }
+
+    public int getMaxDepth() {
+        return _maxDepth;
+    }
+
+    public int getMinSize() {
+        return _minSize;
+    }
+
+    /**
+     * Returns the local ontology file configured by the arguments last passed to {@link #parseArguments(String[])}, or
+     * null if the ontology is loaded from its URI.
+     *
+     * @return the local ontology file, or null
+     */
+    public File getOntologyFile() {
+        return _ontologyFile;
+    }
+
+    /**
+     * Returns the URI of the ontology configured by the arguments last passed to {@link #parseArguments(String[])}.
+     *
+     * @return the ontology URI
+     */
+    public URI getOntologyURI() {
+        return _ontologyURI;
+    }
+
+    /**
+     * Configures this driver from the given POSIX style arguments.
+     *
+     * @param args the arguments to configure this driver with
+     * @return 0 if the arguments were valid, or a non-zero status code if they were not (and help has been printed)
+     * @throws IOException if the output directory could not be checked
+     */
+    public int parseArguments(String[] args) throws IOException {
         CommandLineParser parser = new GnuParser();
         HelpFormatter help = new HelpFormatter();
         Options options = bindOptions();
@@ -140,6 +370,24 @@ public class OWL2JSONDriver {
                             "Synonyms will be identified using the default annotation property '" + _synonymURI + "'");
                 }
 
+                // check -c option - optional, snapshots are not used if absent
+                if (cl.hasOption("c")) {
+                    _snapshotDirectory = new File(cl.getOptionValue("c"));
+                    System.out.println("Ontology snapshots will be cached in '" + _snapshotDirectory + "'");
+                }
+                else {
+                    _snapshotDirectory = null;
+                }
+
+                // check lazy flag - optional, defaults to extracting all class data up front
+                if (cl.hasOption("l")) {
+                    _lazy = true;
+                    System.out.println("Class data will be extracted from the ontology only as required");
+                }
+                else {
+                    _lazy = false;
+                }
+
                 // check maxDepth and minSize options - optional, both default to -1
                 if (cl.hasOption("d")) {
                     _maxDepth = Integer.parseInt(cl.getOptionValue("d"));
@@ -156,6 +404,93 @@ public class OWL2JSONDriver {
                     _minSize = -1;
                 }
 
+                // check format option - optional, defaults to json
+                if (cl.hasOption("fmt")) {
+                    try {
+                        _format = HierarchyFormat.forName(cl.getOptionValue("fmt"));
+                    }
+                    catch (IllegalArgumentException e) {
+                        throw new ParseException(e.getMessage());
+                    }
+                    System.out.println("Output will be written as " + _format);
+                }
+                else {
+                    _format = HierarchyFormat.JSON;
+                }
+
+                // check compareFormats flag - optional
+                _compareFormats = cl.hasOption("cf");
+
+                // check flat flag - optional, defaults to the nested layout
+                if (cl.hasOption("fl")) {
+                    if (cl.hasOption("sd")) {
+                        throw new ParseException("Flat output can't be sharded");
+                    }
+                    _flat = true;
+                    System.out.println("Output will use the flat layout");
+                }
+                else {
+                    _flat = false;
+                }
+
+                // check shardDepth option - optional, output is not sharded if absent
+                if (cl.hasOption("sd")) {
+                    _shardDepth = Integer.parseInt(cl.getOptionValue("sd"));
+                    if (_shardDepth < 1) {
+                        throw new ParseException("Shard depth must be at least 1");
+                    }
+                    System.out.println("Output will be sharded every " + _shardDepth + " levels");
+                }
+                else {
+                    _shardDepth = -1;
+                }
+
+                // check incremental option - optional, the whole output is written every time if absent
+                if (cl.hasOption("i")) {
+                    if (_flat || _shardDepth != -1 || _format != HierarchyFormat.JSON ||
+                            (_outputFile != null && _outputFile.getName().endsWith(".gz"))) {
+                        throw new ParseException("Incremental conversion needs uncompressed, unsharded JSON output");
+                    }
+                    _incrementalStateFile = new File(cl.getOptionValue("i"));
+                    System.out.println("Unchanged subtrees will be reused from the previous output, " +
+                                               "using the state in '" + _incrementalStateFile + "'");
+                }
+                else {
+                    _incrementalStateFile = null;
+                }
+
+                // check watch flag - optional, the ontology is converted once if absent
+                if (cl.hasOption("w")) {
+                    if (_ontologyFile == null) {
+                        throw new ParseException("Watch mode needs a local ontology file (use -of)");
+                    }
+                    _watch = true;
+                    _watchDelay = cl.hasOption("wd") ? Long.parseLong(cl.getOptionValue("wd")) : 500;
+                    System.out.println("'" + _ontologyFile + "' will be converted again each time it changes");
+                }
+                else {
+                    _watch = false;
+                }
+
+                // check report option - optional, metrics are only published over JMX if absent
+                if (cl.hasOption("rp")) {
+                    _reportFile = new File(cl.getOptionValue("rp"));
+                    System.out.println("A report of the time and memory used by each phase will be written to '" +
+                                               _reportFile + "'");
+                }
+                else {
+                    _reportFile = null;
+                }
+
+                // check resolutions option - optional, only the output file is written if absent
+                if (cl.hasOption("v")) {
+                    _resolutions = Arrays.asList(cl.getOptionValue("v").split(","));
+                    System.out.println("Additional resolutions will be written: " + _resolutions);
+                }
+                else {
+                    _resolutions = Collections.emptyList();
+                }
+
                 // check nr flag - optional, used to suppress reasoning, default is to use reasoning
                 if (cl.hasOption("nr")) {
                     _useReasoning = false;
@@ -166,19 +501,66 @@ public class OWL2JSONDriver {
                     System.out.println("Using inferred ontology tree hierarchy");
                 }
 
+                // check reasoner option - optional, defaults to hermit
+                if (cl.hasOption("r")) {
+                    _reasonerName = cl.getOptionValue("r");
+                    System.out.println("Using reasoner '" + _reasonerName + "' to classify the ontology");
+                }
+                else {
+                    _reasonerName = ReasonerFactoryLocator.HERMIT;
+                }
+
+                // check threads option - optional, defaults to 1
+                if (cl.hasOption("t")) {
+                    _extractionThreads = Integer.parseInt(cl.getOptionValue("t"));
+                    System.out.println("Using " + _extractionThreads + " threads to extract classes");
+                }
+                else {
+                    _extractionThreads = 1;
+                }
+
+                // check td flag - optional, defaults to per-class extraction
+                if (cl.hasOption("td")) {
+                    _topDownExtraction = true;
+                    System.out.println("Using a single top-down walk of the inferred hierarchy to extract classes");
+                }
+                else {
+                    _topDownExtraction = false;
+                }
+
                 // check useZooma flag - optional, defaults to false
                 if (cl.hasOption("z")) {
                     _useZooma = true;
                     System.out.print("Using ZOOMA to get data counts");
                     if (cl.getOptionValue("z") != null) {
-                        _zoomaDatasource = URI.create(cl.getOptionValue("z"));
-                        System.out.print(": datasource = '" + _zoomaDatasource + "'");
+                        _zoomaDatasources = new ArrayList<>();
+                        for (String zoomaDatasource : cl.getOptionValue("z").split(",")) {
+                            _zoomaDatasources.add(URI.create(zoomaDatasource.trim()));
+                        }
+                        _zoomaDatasource = _zoomaDatasources.get(0);
+                        System.out.print(": datasource" + (_zoomaDatasources.size() > 1 ? "s" : "") + " = " +
+                                                 _zoomaDatasources);
                     }
                     System.out.println("");
                 }
                 else {
                     _useZooma = false;
                 }
+
+                // check ZOOMA cache options - optional, ZOOMA is queried every time if absent
+                if (cl.hasOption("zc")) {
+                    _zoomaCacheDirectory = new File(cl.getOptionValue("zc"));
+                    long ttlMinutes = cl.hasOption("zt") ? Long.parseLong(cl.getOptionValue("zt")) : 60;
+                    _zoomaCacheTTL = ttlMinutes * 60 * 1000;
+                    _zoomaOffline = cl.hasOption("zo");
+                    System.out.println("ZOOMA responses will be cached in '" + _zoomaCacheDirectory + "' " +
+                                               (_zoomaOffline
+                                                       ? "(offline)"
+                                                       : "for " + _zoomaCacheTTL / 60000 + " minutes"));
+                }
+                else if (cl.hasOption("zo")) {
+                    throw new ParseException("Offline mode needs a ZOOMA cache directory (use -zc)");
+                }
             }
         }
         catch (ParseException e) {
@@ -201,8 +583,8 @@ public class OWL2JSONDriver {
                 "f",
                 "file",
                 true,
-                "Output file - the file where the resulting JSON output should be written.");
-        fileOption.setRequired(true);
+                "Output file - the file where the resulting JSON output should be written.  If the file name ends in '.gz', the output will be gzipped.  Required, except when serving the ontology with OWL2JSONServer.");
+        fileOption.setRequired(false);
         options.addOption(fileOption);
 
         // add ontology options
@@ -227,6 +609,20 @@ public class OWL2JSONDriver {
                 "Synonym URI - the URI of the annotation property that describes synonyms in the ontology. Defaults to 'http://www.ebi.ac.uk/efo/alternative_term'. Optional.");
         synonymOption.setRequired(false);
         options.addOption(synonymOption);
+        Option snapshotOption = new Option(
+                "c",
+                "cache",
+                true,
+                "Snapshot cache directory - a directory in which to cache snapshots of ontologies loaded from a local file.  If the file and settings are unchanged since a previous run, the ontology is restored from its snapshot instead of being reloaded.  Optional.");
+        snapshotOption.setRequired(false);
+        options.addOption(snapshotOption);
+        Option lazyOption = new Option(
+                "l",
+                "lazy",
+                false,
+                "Lazy flag - use to only extract the class data needed to generate the hierarchy (labels and children), rather than all class data.  Snapshots are not written in this mode.  Optional.");
+        lazyOption.setRequired(false);
+        options.addOption(lazyOption);
 
         // add sizing options
         Option maxDepthOption = new Option("d",
@@ -241,6 +637,60 @@ public class OWL2JSONDriver {
                                           "Min size - the minimum size a node in the tree must have in order to be rendered as JSON.  Nodes of less than this size are aggregated.  Optional.");
         minSizeOption.setRequired(false);
         options.addOption(minSizeOption);
+        Option formatOption = new Option("fmt",
+                                         "format",
+                                         true,
+                                         "Format - the encoding to write the output in: 'json' (the default), or the binary encodings 'smile' or 'cbor'.  Optional.");
+        formatOption.setRequired(false);
+        options.addOption(formatOption);
+        Option flatOption = new Option("fl",
+                                       "flat",
+                                       false,
+                                       "Flat flag - use to write the output as parallel arrays of node uris, names, sizes and child node numbers, with each distinct node written once, instead of as a nested tree.  Can't be used with -sd.  Optional.");
+        flatOption.setRequired(false);
+        options.addOption(flatOption);
+        Option compareFormatsOption = new Option("cf",
+                                                 "compareFormats",
+                                                 false,
+                                                 "Compare formats flag - use to report the size of the output, and the time taken to parse it, in each format.  Optional.");
+        compareFormatsOption.setRequired(false);
+        options.addOption(compareFormatsOption);
+        Option shardDepthOption = new Option("sd",
+                                             "shardDepth",
+                                             true,
+                                             "Shard depth - use to split the output into a root file holding this many levels of the tree, plus a file in a '-shards' directory for each subtree below it (sharded the same way), and a '-index' file mapping each node to the file that lists its children.  Optional.");
+        shardDepthOption.setRequired(false);
+        options.addOption(shardDepthOption);
+        Option incrementalOption = new Option("i",
+                                              "incremental",
+                                              true,
+                                              "Incremental state file - a file in which to record where each subtree was written in the output.  On the next run (e.g. for the next release of the ontology), subtrees that are unchanged are copied from the previous output instead of being written again.  Needs uncompressed, unsharded JSON output.  Optional.");
+        incrementalOption.setRequired(false);
+        options.addOption(incrementalOption);
+        Option watchOption = new Option("w",
+                                        "watch",
+                                        false,
+                                        "Watch flag - use to keep running after the conversion, and convert the ontology again each time the local ontology file (-of) changes.  Each output file is replaced once it has been written in full.  Optional.");
+        watchOption.setRequired(false);
+        options.addOption(watchOption);
+        Option watchDelayOption = new Option("wd",
+                                             "watchDelay",
+                                             true,
+                                             "Watch delay - the number of milliseconds the ontology file must be unchanged for before it is converted again, so a burst of saves only results in one conversion.  Defaults to 500.  Optional.");
+        watchDelayOption.setRequired(false);
+        options.addOption(watchDelayOption);
+        Option reportOption = new Option("rp",
+                                         "report",
+                                         true,
+                                         "Report file - a file to write a JSON report to, with the wall time, CPU time, allocated bytes, classes or nodes per second and peak heap of each phase of the conversion.  The same metrics are always published over JMX.  Optional.");
+        reportOption.setRequired(false);
+        options.addOption(reportOption);
+        Option resolutionsOption = new Option("v",
+                                              "views",
+                                              true,
+                                              "Views - a comma separated list of additional resolutions to write, each as 'depth:size' (e.g. '3:-1,5:-1,-1:1%,-1:-1').  Sizes ending in '%' are a percentage of the size of the root.  Each resolution is written alongside the output file, with the resolution added to the file name, from a single build of the hierarchy.  Optional.");
+        resolutionsOption.setRequired(false);
+        options.addOption(resolutionsOption);
 
         // add additional config options
         Option noReasoningOption = new Option("nr",
@@ -249,15 +699,51 @@ public class OWL2JSONDriver {
                                               "No reasoning flag - use to prevent the ontology being classified before converting the inferred hierarchy.");
         noReasoningOption.setRequired(false);
         options.addOption(noReasoningOption);
+        Option reasonerOption = new Option("r",
+                                           "reasoner",
+                                           true,
+                                           "Reasoner - the reasoner to classify the ontology with: 'hermit' (the default), 'structural', the name of any other reasoner on the classpath, or the class name of an OWLReasonerFactory.  Optional.");
+        reasonerOption.setRequired(false);
+        options.addOption(reasonerOption);
+        Option threadsOption = new Option("t",
+                                          "threads",
+                                          true,
+                                          "Threads - the number of threads to use when extracting classes from the classified ontology.  Defaults to 1.  Optional.");
+        threadsOption.setRequired(false);
+        options.addOption(threadsOption);
+        Option topDownOption = new Option("td",
+                                          "topDown",
+                                          false,
+                                          "Top-down flag - use to derive class types and obsolete status from a single walk down the inferred hierarchy, instead of querying the ancestors of each class.  Optional.");
+        topDownOption.setRequired(false);
+        options.addOption(topDownOption);
         @SuppressWarnings("AccessStaticViaInstance")
         Option zoomaOption = OptionBuilder
                 .withArgName("URI")
                 .withLongOpt("zooma")
                 .hasOptionalArg()
                 .withDescription(
-                        "Use ZOOMA - use to acquire data counts from ZOOMA when evaluating the size of nodes.  You can optionally supply the URI of a datasource from ZOOMA to restrict to")
+                        "Use ZOOMA - use to acquire data counts from ZOOMA when evaluating the size of nodes.  You can optionally supply the URI of a datasource from ZOOMA to restrict to, or a comma separated list of datasource URIs to count each node against every datasource (each node in the output then has a 'sizes' array, in the order given, and 'size' is its size in the first datasource)")
                 .create("z");
         options.addOption(zoomaOption);
+        Option zoomaCacheOption = new Option("zc",
+                                             "zoomaCache",
+                                             true,
+                                             "ZOOMA cache directory - a directory in which to cache ZOOMA responses, so ZOOMA is only queried again when the cached response expires.  Optional.");
+        zoomaCacheOption.setRequired(false);
+        options.addOption(zoomaCacheOption);
+        Option zoomaTTLOption = new Option("zt",
+                                           "zoomaTTL",
+                                           true,
+                                           "ZOOMA cache time-to-live - the number of minutes a cached ZOOMA response is used for before it is revalidated with ZOOMA.  Defaults to 60.  Optional.");
+        zoomaTTLOption.setRequired(false);
+        options.addOption(zoomaTTLOption);
+        Option zoomaOfflineOption = new Option("zo",
+                                               "zoomaOffline",
+                                               false,
+                                               "ZOOMA offline flag - use to only use cached ZOOMA responses, whatever their age, and never query ZOOMA.  Requires -zc.  Optional.");
+        zoomaOfflineOption.setRequired(false);
+        options.addOption(zoomaOfflineOption);
         return options;
     }
 
@@ -290,9 +776,34 @@ public class OWL2JSONDriver {
                                                URI synonymURI,
                                                boolean useReasoning)
             throws Exception {
+        return createOntologyLoader(ontologyFile,
+                                    ontologyToLoad,
+                                    synonymURI,
+                                    useReasoning,
+                                    ReasonerFactoryLocator.HERMIT,
+                                    1,
+                                    false,
+                                    null,
+                                    false);
+    }
+
+    public OntologyLoader createOntologyLoader(File ontologyFile,
+                                               URI ontologyToLoad,
+                                               URI synonymURI,
+                                               boolean useReasoning,
+                                               String reasonerName,
+                                               int extractionThreads,
+                                               boolean topDownExtraction,
+                                               File snapshotDirectory,
+                                               boolean lazy)
+            throws Exception {
         AbstractOntologyLoader loader;
         if (useReasoning) {
-            loader = new ReasonedOntologyLoader();
+            ReasonedOntologyLoader reasonedLoader = new ReasonedOntologyLoader();
+            reasonedLoader.setReasonerFactory(ReasonerFactoryLocator.locate(reasonerName), reasonerName);
+            reasonedLoader.setExtractionThreads(extractionThreads);
+            reasonedLoader.setTopDownExtraction(topDownExtraction);
+            loader = reasonedLoader;
         }
         else {
             loader = new AssertedOntologyLoader();
@@ -300,7 +811,16 @@ public class OWL2JSONDriver {
         loader.setOntologyFile(ontologyFile);
         loader.setOntologyURI(ontologyToLoad);
         loader.setSynonymURI(synonymURI);
+        loader.setSnapshotDirectory(snapshotDirectory);
+        loader.setLazy(lazy);
         loader.init();
+        if (loader instanceof ReasonedOntologyLoader &&
+                ((ReasonedOntologyLoader) loader).getClassificationTime() != -1) {
+            ReasonedOntologyLoader reasonedLoader = (ReasonedOntologyLoader) loader;
+            System.out.println("Classified using " + reasonedLoader.getReasonerName() + " in " +
+                                       reasonedLoader.getClassificationTime() + "ms, extracted classes in " +
+                                       reasonedLoader.getExtractionTime() + "ms");
+        }
         return loader;
     }
 
@@ -311,8 +831,363 @@ public class OWL2JSONDriver {
     }
 
     public void saveJSON(String jsonString, File outputFile) throws IOException {
-        BufferedWriter out = new BufferedWriter(new FileWriter(outputFile));
-        out.write(jsonString);
-        out.close();
+        File tempFile = getTempFile(outputFile);
+        try {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(openOutputStream(tempFile),
+                                                                        StandardCharsets.UTF_8))) {
+                out.write(jsonString);
+            }
+            replaceFile(tempFile, outputFile);
+        }
+        finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Generates the ontology hierarchy and streams it, as JSON, straight to the given output file.  The JSON is never
+     * held in memory as a whole.  If the name of the output file ends in ".gz", the output is gzipped.
+     */
+    public void writeJSON(OntologyLoader loader,
+                          OntologyHierarchyNodeCounter counter,
+                          int maxDepth,
+                          int minSize,
+                          File outputFile) throws IOException {
+        writeJSON(loader, counter, maxDepth, minSize, outputFile, Collections.<String>emptyList());
+    }
+
+    /**
+     * Generates the ontology hierarchy once, and streams it as JSON to the given output file and to a file per
+     * additional resolution.  Each resolution is a string of the form "depth:size", where size may be a percentage of
+     * the size of the root (e.g. "1%"), and is written to a file named after the output file with the resolution
+     * appended, e.g. "output-d3.json" or "output-s1pc.json".
+     */
+    public void writeJSON(OntologyLoader loader,
+                          OntologyHierarchyNodeCounter counter,
+                          int maxDepth,
+                          int minSize,
+                          File outputFile,
+                          List<String> resolutions) throws IOException {
+        OntologyHierarchyNode hierarchy = OntologyHierarchyBuilder.buildHierarchy(loader, counter);
+        OntologyHierarchyNode view = OntologyHierarchyBuilder.createView(hierarchy, maxDepth, minSize);
+        writeConfiguredOutput(view, outputFile);
+        if (_compareFormats) {
+            compareFormats(view);
+        }
+        for (String resolution : resolutions) {
+            String[] depthAndSize = resolution.trim().split(":");
+            if (depthAndSize.length != 2) {
+                throw new IllegalArgumentException("Resolution '" + resolution + "' is not of the form 'depth:size'");
+            }
+            int viewDepth = Integer.parseInt(depthAndSize[0].trim());
+            String size = depthAndSize[1].trim();
+            int viewSize;
+            String label;
+            if (size.endsWith("%")) {
+                double percentage = Double.parseDouble(size.substring(0, size.length() - 1));
+                viewSize = (int) Math.ceil(hierarchy.getSize() * percentage / 100);
+                label = "s" + size.substring(0, size.length() - 1) + "pc";
+            }
+            else {
+                viewSize = Integer.parseInt(size);
+                label = viewSize == -1 ? "" : "s" + viewSize;
+            }
+            if (viewDepth != -1) {
+                label = label.isEmpty() ? "d" + viewDepth : "d" + viewDepth + "-" + label;
+            }
+            if (label.isEmpty()) {
+                label = "full";
+            }
+            File viewFile = getResolutionFile(outputFile, label);
+            System.out.println("Writing resolution '" + resolution + "' to '" + viewFile + "'");
+            writeOutput(OntologyHierarchyBuilder.createView(hierarchy, viewDepth, viewSize), viewFile);
+        }
+    }
+
+    /**
+     * Writes the given hierarchy to the given output file in the format and layout (flat, sharded or incremental)
+     * configured by the arguments last passed to {@link #parseArguments(String[])}.
+     */
+    public void writeConfiguredOutput(OntologyHierarchyNode hierarchy, File outputFile) throws IOException {
+        if (_incrementalStateFile != null) {
+            writeIncrementalJSON(hierarchy, outputFile, _incrementalStateFile);
+        }
+        else {
+            writeOutput(hierarchy, outputFile);
+        }
+    }
+
+    /**
+     * Streams the given hierarchy, as JSON, to the given output file.  If the name of the output file ends in ".gz",
+     * the output is gzipped.
+     */
+    public void writeJSON(OntologyHierarchyNode hierarchy, File outputFile) throws IOException {
+        writeHierarchy(hierarchy, HierarchyFormat.JSON, outputFile);
+    }
+
+    /**
+     * Streams the given hierarchy, in the given format, to the given output file.  If the name of the output file ends
+     * in ".gz", the output is gzipped.  The output file is only replaced once the hierarchy has been written in full.
+     */
+    public void writeHierarchy(OntologyHierarchyNode hierarchy, HierarchyFormat format, File outputFile)
+            throws IOException {
+        File tempFile = getTempFile(outputFile);
+        try {
+            try (OutputStream out = openOutputStream(tempFile)) {
+                OntologyHierarchyBuilder.writeOntologyHierarchy(hierarchy, format, out);
+            }
+            replaceFile(tempFile, outputFile);
+        }
+        finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Streams the given hierarchy, in the given format, to the given output file using the flat layout described in
+     * {@link OntologyHierarchyBuilder#writeFlatOntologyHierarchy(OntologyHierarchyNode, HierarchyFormat,
+     * OutputStream)}.  If the name of the output file ends in ".gz", the output is gzipped.
+     */
+    public void writeFlatHierarchy(OntologyHierarchyNode hierarchy, HierarchyFormat format, File outputFile)
+            throws IOException {
+        File tempFile = getTempFile(outputFile);
+        try {
+            try (OutputStream out = openOutputStream(tempFile)) {
+                OntologyHierarchyBuilder.writeFlatOntologyHierarchy(hierarchy, format, out);
+            }
+            replaceFile(tempFile, outputFile);
+        }
+        finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Streams the given hierarchy, as JSON, to the given output file, copying any subtrees that are unchanged since the
+     * output was last written from the existing output (see {@link IncrementalHierarchyWriter}).  Where each subtree
+     * was written is recorded in the given state file for next time; if the state file doesn't exist, or doesn't match
+     * the existing output, the whole hierarchy is written.  The output is written to a temporary file and moved into
+     * place once complete, so readers never see a partially written file.
+     */
+    public void writeIncrementalJSON(OntologyHierarchyNode hierarchy, File outputFile, File stateFile)
+            throws IOException {
+        IncrementalHierarchyState previousState = null;
+        if (stateFile.exists()) {
+            try {
+                previousState = IncrementalHierarchyState.read(stateFile);
+                if (!previousState.matches(outputFile)) {
+                    System.out.println("'" + outputFile + "' has changed since '" + stateFile + "' was written, " +
+                                               "so the whole hierarchy will be written");
+                    previousState = null;
+                }
+            }
+            catch (IOException e) {
+                System.out.println("Ignoring incremental state in '" + stateFile + "' (" + e.getMessage() + ")");
+            }
+        }
+
+        IncrementalHierarchyWriter writer = previousState != null
+                ? new IncrementalHierarchyWriter(previousState, outputFile)
+                : new IncrementalHierarchyWriter();
+        File tempFile = getTempFile(outputFile);
+        Map<String, long[]> fragments;
+        try {
+            try (OutputStream out = openOutputStream(tempFile);
+                 ConversionMetrics.Phase phase = ConversionMetrics.startPhase("write")) {
+                fragments = writer.write(hierarchy, out);
+                phase.setItems(writer.getWrittenNodes());
+            }
+            replaceFile(tempFile, outputFile);
+        }
+        finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        new IncrementalHierarchyState(outputFile.length(), outputFile.lastModified(), fragments).write(stateFile);
+        System.out.println("Reused " + writer.getReusedSubtrees() + " unchanged subtrees and wrote " +
+                                   writer.getWrittenNodes() + " changed nodes to '" + outputFile + "'");
+    }
+
+    /**
+     * Writes the metrics of a conversion to the given file as a JSON run report (see {@link
+     * ConversionMetrics#writeReport(OutputStream)}).  The report file is only replaced once it has been written in full.
+     */
+    public void writeReport(ConversionMetrics metrics, File reportFile) throws IOException {
+        File tempFile = getTempFile(reportFile);
+        try {
+            try (OutputStream out = openOutputStream(tempFile)) {
+                metrics.writeReport(out);
+            }
+            replaceFile(tempFile, reportFile);
+        }
+        finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Reports the size of the given hierarchy, and the time taken to parse it, when encoded in each of the available
+     * formats.  Parse times are the best of several parses, after warming up.
+     */
+    public void compareFormats(OntologyHierarchyNode hierarchy) throws IOException {
+        System.out.println("Format comparison for " + hierarchy.getName() + ":");
+        for (HierarchyFormat format : HierarchyFormat.values()) {
+            compareFormat(hierarchy, format, false);
+            compareFormat(hierarchy, format, true);
+        }
+    }
+
+    private void compareFormat(OntologyHierarchyNode hierarchy, HierarchyFormat format, boolean flat)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (flat) {
+            OntologyHierarchyBuilder.writeFlatOntologyHierarchy(hierarchy, format, bytes);
+        }
+        else {
+            OntologyHierarchyBuilder.writeOntologyHierarchy(hierarchy, format, bytes);
+        }
+        byte[] encoded = bytes.toByteArray();
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(encoded);
+        }
+
+        long bestParseTime = Long.MAX_VALUE;
+        int tokens = 0;
+        for (int i = 0; i < 8; i++) {
+            long start = System.nanoTime();
+            tokens = 0;
+            try (JsonParser parser = format.getFactory().createParser(encoded)) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (token == JsonToken.VALUE_STRING) {
+                        parser.getText();
+                    }
+                    tokens++;
+                }
+            }
+            bestParseTime = Math.min(bestParseTime, System.nanoTime() - start);
+        }
+        System.out.println(String.format("  %-6s %-6s %,12d bytes (%,12d gzipped), parsed %,d tokens in %.2fms",
+                                         format, flat ? "flat" : "nested", encoded.length, gzipped.size(), tokens,
+                                         bestParseTime / 1000000.0));
+    }
+
+    /**
+     * Streams the given hierarchy, as JSON, split into shards of <code>shardDepth</code> levels each.  The root shard
+     * is written to the given output file, and the others to numbered files in a directory named after the output
+     * file with "-shards" appended.  An index, mapping the URI of each node to the file that lists its children
+     * (relative to the directory of the output file), is written alongside the output file with "-index" appended to
+     * its name.
+     */
+    public void writeShardedJSON(OntologyHierarchyNode hierarchy, int shardDepth, File outputFile)
+            throws IOException {
+        writeShardedHierarchy(hierarchy, shardDepth, HierarchyFormat.JSON, outputFile);
+    }
+
+    /**
+     * Streams the given hierarchy split into shards, as for {@link #writeShardedJSON(OntologyHierarchyNode, int,
+     * File)}, writing each shard in the given format.  The index is always written as JSON.
+     */
+    public void writeShardedHierarchy(OntologyHierarchyNode hierarchy,
+                                      int shardDepth,
+                                      HierarchyFormat format,
+                                      File outputFile) throws IOException {
+        Map<URI, Integer> shardIndex = new LinkedHashMap<>();
+        List<OntologyHierarchyNode> shardRoots =
+                OntologyHierarchyBuilder.shardHierarchy(hierarchy, shardDepth, shardIndex);
+
+        String[] nameAndSuffix = splitFileName(outputFile);
+        File shardDirectory = new File(outputFile.getAbsoluteFile().getParentFile(), nameAndSuffix[0] + "-shards");
+        if (shardRoots.size() > 1 && !shardDirectory.exists() && !shardDirectory.mkdirs()) {
+            throw new IOException("Failed to create shard directory '" + shardDirectory.getAbsolutePath() + "'");
+        }
+
+        String[] shardLocations = new String[shardRoots.size()];
+        for (int shard = 0; shard < shardRoots.size(); shard++) {
+            File shardFile = shard == 0
+                    ? outputFile
+                    : new File(shardDirectory, shard + nameAndSuffix[1]);
+            shardLocations[shard] = shard == 0
+                    ? outputFile.getName()
+                    : shardDirectory.getName() + "/" + shardFile.getName();
+            writeHierarchy(OntologyHierarchyBuilder.createView(shardRoots.get(shard), shardDepth, -1), format, shardFile);
+        }
+
+        Map<URI, String> index = new LinkedHashMap<>();
+        for (Map.Entry<URI, Integer> entry : shardIndex.entrySet()) {
+            index.put(entry.getKey(), shardLocations[entry.getValue()]);
+        }
+        File indexFile = getResolutionFile(outputFile, "index");
+        indexFile = new File(indexFile.getParentFile(),
+                             splitFileName(indexFile)[0] + HierarchyFormat.JSON.getFileExtension() +
+                                     (indexFile.getName().endsWith(".gz") ? ".gz" : ""));
+        File tempIndexFile = getTempFile(indexFile);
+        try {
+            try (OutputStream out = openOutputStream(tempIndexFile)) {
+                OntologyHierarchyBuilder.writeShardIndexAsJson(index, out);
+            }
+            replaceFile(tempIndexFile, indexFile);
+        }
+        finally {
+            Files.deleteIfExists(tempIndexFile.toPath());
+        }
+        System.out.println("Wrote " + shardRoots.size() + " shards for '" + outputFile + "'");
+    }
+
+    private void writeOutput(OntologyHierarchyNode hierarchy, File outputFile) throws IOException {
+        if (_flat) {
+            writeFlatHierarchy(hierarchy, _format, outputFile);
+        }
+        else if (_shardDepth != -1) {
+            writeShardedHierarchy(hierarchy, _shardDepth, _format, outputFile);
+        }
+        else {
+            writeHierarchy(hierarchy, _format, outputFile);
+        }
+    }
+
+    private File getResolutionFile(File outputFile, String label) {
+        String[] nameAndSuffix = splitFileName(outputFile);
+        return new File(outputFile.getAbsoluteFile().getParentFile(), nameAndSuffix[0] + "-" + label + nameAndSuffix[1]);
+    }
+
+    private String[] splitFileName(File file) {
+        String name = file.getName();
+        String suffix = "";
+        if (name.endsWith(".gz")) {
+            suffix = ".gz";
+            name = name.substring(0, name.length() - 3);
+        }
+        int extension = name.lastIndexOf('.');
+        if (extension > 0) {
+            suffix = name.substring(extension) + suffix;
+            name = name.substring(0, extension);
+        }
+        return new String[]{name, suffix};
+    }
+
+    /**
+     * Returns the temporary file to write the given output file to, before moving it into place.  The temporary file is
+     * in the same directory, so it can be moved atomically, and ends with the name of the output file, so it is
+     * compressed in the same way.
+     */
+    private File getTempFile(File outputFile) {
+        return new File(outputFile.getAbsoluteFile().getParentFile(), ".tmp-" + outputFile.getName());
+    }
+
+    private void replaceFile(File tempFile, File outputFile) throws IOException {
+        Files.move(tempFile.toPath(),
+                   outputFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private OutputStream openOutputStream(File outputFile) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile), 65536);
+        if (outputFile.getName().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 65536);
+        }
+        return out;
     }
 }
@@ -0,0 +1,548 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.semanticweb.owlapi.model.IRI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A long-running HTTP server, built on the JDK's HTTP server, that keeps loaded ontologies and their hierarchies in
+ * memory and serves them as JSON.  The ontologies to serve are listed in a manifest file, one per line, each given as
+ * the arguments to {@link OWL2JSONDriver} (the output file may be omitted).  The following requests are supported:
+ * <ul>
+ * <li><code>GET /ontologies</code> - the URIs of the ontologies being served</li>
+ * <li><code>GET /hierarchy?ontology=URI[&depth=D][&minSize=S]</code> - the hierarchy of an ontology, as written by
+ * {@link OWL2JSONDriver}.  Depth and minSize default to the -d and -s arguments for the ontology</li>
+ * <li><code>GET /subtree?ontology=URI&iri=IRI[&depth=D][&minSize=S]</code> - the hierarchy under the class with the
+ * given IRI</li>
+ * <li><code>GET /node?ontology=URI&iri=IRI</code> - the label, synonyms, types, size and direct children of the class
+ * with the given IRI</li>
+ * </ul>
+ * The ontology parameter may be omitted if only one ontology is being served.  Responses are cached, carry an ETag so
+ * clients can revalidate with If-None-Match, and are gzipped for clients that accept it.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class OWL2JSONServer {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final Map<URI, ServedOntology> ontologies = new LinkedHashMap<>();
+    private final Map<String, CachedResponse> responseCache;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    protected Logger getLog() {
+        return log;
+    }
+
+    public static void main(String[] args) {
+        CommandLineParser parser = new GnuParser();
+        HelpFormatter help = new HelpFormatter();
+        Options options = bindOptions();
+        try {
+            CommandLine cl = parser.parse(options, args, true);
+            int port = cl.hasOption("p") ? Integer.parseInt(cl.getOptionValue("p")) : DEFAULT_PORT;
+            int cacheSize = cl.hasOption("cs") ? Integer.parseInt(cl.getOptionValue("cs")) : DEFAULT_CACHE_SIZE;
+
+            OWL2JSONServer server = new OWL2JSONServer(cacheSize);
+            server.loadManifest(new File(cl.getOptionValue("m")));
+            server.start(port);
+            System.out.println("Serving " + server.ontologies.size() + " ontologies on port " + port);
+        }
+        catch (ParseException | NumberFormatException e) {
+            System.err.println("Failed to read supplied arguments (" + e.getMessage() + ")");
+            help.printHelp("owl2json-server", options, true);
+            System.exit(1);
+        }
+        catch (Exception e) {
+            System.err.println("OWL2JSON server did not start successfully: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static Options bindOptions() {
+        Options options = new Options();
+
+        // help
+        Option helpOption = new Option("h", "help", false, "Print the help");
+        options.addOption(helpOption);
+
+        Option manifestOption = new Option(
+                "m",
+                "manifest",
+                true,
+                "Manifest file - a file listing the ontologies to serve, one per line, each given as the arguments to a single owl2json conversion.");
+        manifestOption.setRequired(true);
+        options.addOption(manifestOption);
+        Option portOption = new Option(
+                "p",
+                "port",
+                true,
+                "Port - the port to listen on.  Defaults to " + DEFAULT_PORT + ".  Optional.");
+        portOption.setRequired(false);
+        options.addOption(portOption);
+        Option cacheSizeOption = new Option(
+                "cs",
+                "cacheSize",
+                true,
+                "Cache size - the number of responses to keep in memory.  Defaults to " + DEFAULT_CACHE_SIZE +
+                        ".  Optional.");
+        cacheSizeOption.setRequired(false);
+        options.addOption(cacheSizeOption);
+        return options;
+    }
+
+    public OWL2JSONServer() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public OWL2JSONServer(final int cacheSize) {
+        this.responseCache = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Loads, and builds the hierarchy of, every ontology listed in the given manifest file.
+     *
+     * @param manifestFile the manifest listing the ontologies to serve
+     * @throws Exception if the manifest could not be read, or an ontology could not be loaded
+     */
+    public void loadManifest(File manifestFile) throws Exception {
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                OWL2JSONDriver driver = new OWL2JSONDriver();
+                if (driver.parseArguments(OWL2JSONBatchDriver.splitArguments(line)) != 0) {
+                    throw new IllegalArgumentException("Invalid arguments in manifest: '" + line + "'");
+                }
+                addOntology(driver.createConfiguredOntologyLoader(),
+                            driver.createConfiguredNodeCounter(),
+                            driver.getMaxDepth(),
+                            driver.getMinSize());
+            }
+        }
+    }
+
+    /**
+     * Builds the hierarchy of the ontology from the given loader, and serves it.
+     *
+     * @param loader          an initialized loader for the ontology to serve
+     * @param counter         the counter to attribute sizes to nodes with
+     * @param defaultMaxDepth the maximum depth to serve the hierarchy at, when a request doesn't say
+     * @param defaultMinSize  the minimum node size to serve the hierarchy at, when a request doesn't say
+     */
+    public void addOntology(OntologyLoader loader,
+                            OntologyHierarchyNodeCounter counter,
+                            int defaultMaxDepth,
+                            int defaultMinSize) {
+        long start = System.currentTimeMillis();
+        OntologyHierarchyNode hierarchy = OntologyHierarchyBuilder.buildHierarchy(loader, counter);
+        ServedOntology ontology = new ServedOntology(loader, hierarchy, defaultMaxDepth, defaultMinSize);
+        synchronized (ontologies) {
+            ontologies.put(loader.getOntologyIRI().toURI(), ontology);
+        }
+        synchronized (responseCache) {
+            responseCache.clear();
+        }
+        getLog().info("Serving " + loader.getOntologyIRI() + " (" + ontology.nodesByURI.size() + " nodes, built in " +
+                              (System.currentTimeMillis() - start) + "ms)");
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override public void handle(HttpExchange exchange) throws IOException {
+                handleRequest(exchange);
+            }
+        });
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET requests are supported");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            String cacheKey = path + "?" + parameters;
+
+            CachedResponse response;
+            synchronized (responseCache) {
+                response = responseCache.get(cacheKey);
+            }
+            if (response == null) {
+                response = new CachedResponse(generateResponse(path, parameters));
+                synchronized (responseCache) {
+                    responseCache.put(cacheKey, response);
+                }
+            }
+            sendResponse(exchange, response);
+        }
+        catch (RequestException e) {
+            sendError(exchange, e.getStatusCode(), e.getMessage());
+        }
+        catch (Exception e) {
+            getLog().error("Failed to handle request for " + exchange.getRequestURI(), e);
+            sendError(exchange, 500, "Failed to handle request: " + e.getMessage());
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] generateResponse(String path, Map<String, String> parameters) throws IOException {
+        switch (path) {
+            case "/ontologies":
+                return writeOntologies();
+            case "/hierarchy": {
+                ServedOntology ontology = getOntology(parameters);
+                return writeHierarchy(ontology, ontology.hierarchy, parameters);
+            }
+            case "/subtree": {
+                ServedOntology ontology = getOntology(parameters);
+                return writeHierarchy(ontology, getNode(ontology, parameters), parameters);
+            }
+            case "/node": {
+                ServedOntology ontology = getOntology(parameters);
+                return writeNode(ontology, getNode(ontology, parameters));
+            }
+            default:
+                throw new RequestException(404, "No such resource: " + path);
+        }
+    }
+
+    private byte[] writeOntologies() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            synchronized (ontologies) {
+                for (URI uri : ontologies.keySet()) {
+                    generator.writeString(uri.toString());
+                }
+            }
+            generator.writeEndArray();
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] writeHierarchy(ServedOntology ontology, OntologyHierarchyNode node, Map<String, String> parameters)
+            throws IOException {
+        int maxDepth = getIntParameter(parameters, "depth", ontology.defaultMaxDepth);
+        int minSize = getIntParameter(parameters, "minSize", ontology.defaultMinSize);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OntologyHierarchyBuilder.writeOntologyHierarchyAsJson(
+                OntologyHierarchyBuilder.createView(node, maxDepth, minSize), out);
+        return out.toByteArray();
+    }
+
+    private byte[] writeNode(ServedOntology ontology, OntologyHierarchyNode node) throws IOException {
+        IRI iri = IRI.create(node.getURI());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("uri", node.getURI().toString());
+            generator.writeStringField("name", node.getName());
+            generator.writeNumberField("size", node.getSize());
+            if (node.getSizes() != null) {
+                generator.writeArrayFieldStart("sizes");
+                for (int size : node.getSizes()) {
+                    generator.writeNumber(size);
+                }
+                generator.writeEndArray();
+            }
+            writeStrings(generator, "synonyms", ontology.loader.getOntologyClassSynonyms().get(iri));
+            writeStrings(generator, "types", ontology.loader.getOntologyClassTypeLabels().get(iri));
+            generator.writeArrayFieldStart("children");
+            for (OntologyHierarchyNode child : node.getChildren()) {
+                generator.writeStartObject();
+                generator.writeStringField("uri", child.getURI().toString());
+                generator.writeStringField("name", child.getName());
+                generator.writeNumberField("size", child.getSize());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private void writeStrings(JsonGenerator generator, String fieldName, Set<String> strings) throws IOException {
+        generator.writeArrayFieldStart(fieldName);
+        if (strings != null) {
+            for (String s : strings) {
+                generator.writeString(s);
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    private ServedOntology getOntology(Map<String, String> parameters) {
+        synchronized (ontologies) {
+            String ontology = parameters.get("ontology");
+            if (ontology == null) {
+                if (ontologies.size() == 1) {
+                    return ontologies.values().iterator().next();
+                }
+                throw new RequestException(400, "Supply the 'ontology' parameter to choose one of " +
+                        ontologies.keySet());
+            }
+            ServedOntology served = ontologies.get(getURIParameter("ontology", ontology));
+            if (served == null) {
+                throw new RequestException(404, "Ontology '" + ontology + "' is not being served");
+            }
+            return served;
+        }
+    }
+
+    private OntologyHierarchyNode getNode(ServedOntology ontology, Map<String, String> parameters) {
+        String iri = parameters.get("iri");
+        if (iri == null) {
+            throw new RequestException(400, "Supply the 'iri' parameter to choose a class");
+        }
+        OntologyHierarchyNode node = ontology.nodesByURI.get(getURIParameter("iri", iri));
+        if (node == null) {
+            throw new RequestException(404, "Class '" + iri + "' is not in the hierarchy");
+        }
+        return node;
+    }
+
+    private URI getURIParameter(String name, String value) {
+        try {
+            return URI.create(value);
+        }
+        catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Parameter '" + name + "' must be a valid URI");
+        }
+    }
+
+    private int getIntParameter(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            throw new RequestException(400, "Parameter '" + name + "' must be an integer");
+        }
+    }
+
+    private Map<String, String> parseQuery(String query) throws IOException {
+        // sorted, so equivalent requests share a cache entry
+        Map<String, String> parameters = new TreeMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.isEmpty()) {
+                    continue;
+                }
+                int equals = parameter.indexOf('=');
+                String name = equals == -1 ? parameter : parameter.substring(0, equals);
+                String value = equals == -1 ? "" : parameter.substring(equals + 1);
+                parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private void sendResponse(HttpExchange exchange, CachedResponse response) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", response.etag);
+        headers.set("Vary", "Accept-Encoding");
+        headers.set("Cache-Control", "no-cache");
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(response.etag) || ifNoneMatch.trim().equals("*"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        byte[] body = response.body;
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = response.getGzippedBody();
+            headers.set("Content-Encoding", "gzip");
+        }
+        headers.set("Content-Type", "application/json; charset=UTF-8");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+        }
+        else {
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            // the response was already under way when it failed, so all we can do is cut it short
+            getLog().debug("Not sending " + statusCode + " for " + exchange.getRequestURI() + ", " +
+                                   "response headers have already been sent");
+            return;
+        }
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * An ontology being served, with its complete hierarchy and an index of the nodes in it by URI
+     */
+    private static class ServedOntology {
+        private final OntologyLoader loader;
+        private final OntologyHierarchyNode hierarchy;
+        private final Map<URI, OntologyHierarchyNode> nodesByURI;
+        private final int defaultMaxDepth;
+        private final int defaultMinSize;
+
+        private ServedOntology(OntologyLoader loader,
+                               OntologyHierarchyNode hierarchy,
+                               int defaultMaxDepth,
+                               int defaultMinSize) {
+            this.loader = loader;
+            this.hierarchy = hierarchy;
+            this.defaultMaxDepth = defaultMaxDepth;
+            this.defaultMinSize = defaultMinSize;
+
+            Map<URI, OntologyHierarchyNode> nodesByURI = new HashMap<>();
+            Map<OntologyHierarchyNode, Boolean> visited = new IdentityHashMap<>();
+            Deque<OntologyHierarchyNode> stack = new ArrayDeque<>();
+            stack.push(hierarchy);
+            while (!stack.isEmpty()) {
+                OntologyHierarchyNode node = stack.pop();
+                if (visited.put(node, Boolean.TRUE) == null) {
+                    if (node.getURI() != null) {
+                        nodesByURI.put(node.getURI(), node);
+                    }
+                    for (OntologyHierarchyNode child : node.getChildren()) {
+                        stack.push(child);
+                    }
+                }
+            }
+            this.nodesByURI = Collections.unmodifiableMap(nodesByURI);
+        }
+    }
+
+    /**
+     * A response body, with its ETag and (once requested) its gzipped form
+     */
+    private static class CachedResponse {
+        private final byte[] body;
+        private final String etag;
+        private volatile byte[] gzippedBody;
+
+        private CachedResponse(byte[] body) {
+            this.body = body;
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                StringBuilder sb = new StringBuilder("\"");
+                for (byte b : digest.digest(body)) {
+                    sb.append(String.format("%02x", b));
+                }
+                this.etag = sb.append("\"").toString();
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("SHA-1 is not supported", e);
+            }
+        }
+
+        private byte[] getGzippedBody() throws IOException {
+            if (gzippedBody == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(body);
+                }
+                gzippedBody = out.toByteArray();
+            }
+            return gzippedBody;
+        }
+    }
+
+    /**
+     * Thrown when a request can't be answered, with the HTTP status code to respond with
+     */
+    private static class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        private RequestException(int statusCode, String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        private int getStatusCode() {
+            return statusCode;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+/**
+ * A hash map from objects to primitive ints, using open addressing with linear probing, so that neither values nor map
+ * entries are boxed or allocated.  Null keys are not supported, and entries can't be removed.  Not thread-safe.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class ObjectIntHashMap<K> {
+    private Object[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public ObjectIntHashMap() {
+        this(16);
+    }
+
+    public ObjectIntHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new Object[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(K key) {
+        return keys[indexOf(key)] != null;
+    }
+
+    /**
+     * Returns the value for the given key, or <code>defaultValue</code> if there is no value for it
+     *
+     * @param key          the key to look up
+     * @param defaultValue the value to return if the key is not in this map
+     * @return the value for this key, or the default value
+     */
+    public int get(K key, int defaultValue) {
+        int index = indexOf(key);
+        return keys[index] != null ? values[index] : defaultValue;
+    }
+
+    /**
+     * Sets the value for the given key, replacing any previous value
+     *
+     * @param key   the key, not null
+     * @param value the value for this key
+     */
+    public void put(K key, int value) {
+        if (key == null) {
+            throw new NullPointerException("Null keys are not supported");
+        }
+        int index = indexOf(key);
+        if (keys[index] == null) {
+            keys[index] = key;
+            size++;
+            values[index] = value;
+            if (size * 2 > keys.length) {
+                resize();
+            }
+        }
+        else {
+            values[index] = value;
+        }
+    }
+
+    private int indexOf(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        int index = (h ^ (h >>> 16)) & mask;
+        while (keys[index] != null && !keys[index].equals(key)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    @Override public String toString() {
+        return "ObjectIntHashMap{size=" + size + ", capacity=" + keys.length + "}";
+    }
+}
@@ -0,0 +1,158 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import org.semanticweb.owlapi.model.IRI;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact, read-only index over the class hierarchy extracted by an {@link OntologyLoader}.  Each class that has an
+ * entry in the loader's children map is assigned a dense integer id, from 0 to {@link #size()} - 1.  Labels are held in
+ * a string pool indexed by id, and children are held in compressed sparse row form: the ids of the children of class
+ * <code>i</code> are <code>childIds[childOffsets[i]]</code> up to (but excluding) <code>childIds[childOffsets[i +
+ * 1]]</code>.
+ * <p/>
+ * Only classes with an entry in the children map are indexed, and child references to classes without an entry (such
+ * as owl:Nothing) or to the class itself are dropped, so every child id refers to an indexed class.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class OntologyClassIndex {
+    private final IRI[] iris;
+    private final Map<IRI, Integer> ids;
+    private final String[] labels;
+    private final int[] childOffsets;
+    private final int[] childIds;
+
+    private OntologyClassIndex(IRI[] iris,
+                               Map<IRI, Integer> ids,
+                               String[] labels,
+                               int[] childOffsets,
+                               int[] childIds) {
+        this.iris = iris;
+        this.ids = ids;
+        this.labels = labels;
+        this.childOffsets = childOffsets;
+        this.childIds = childIds;
+    }
+
+    /**
+     * Builds an index over the given labels and children, as extracted by an {@link OntologyLoader}
+     *
+     * @param ontologyClassLabels   class labels, indexed by class IRI
+     * @param ontologyClassChildren child classes, indexed by parent class IRI
+     * @return an index over these classes
+     */
+    public static OntologyClassIndex build(Map<IRI, String> ontologyClassLabels,
+                                           Map<IRI, Set<IRI>> ontologyClassChildren) {
+        int size = ontologyClassChildren.size();
+        IRI[] iris = new IRI[size];
+        Map<IRI, Integer> ids = new HashMap<>(size * 4 / 3 + 1);
+        for (IRI iri : ontologyClassChildren.keySet()) {
+            iris[ids.size()] = iri;
+            ids.put(iri, ids.size());
+        }
+
+        // labels, pooled so repeated labels share a single string
+        Map<String, String> labelPool = new HashMap<>();
+        String[] labels = new String[size];
+        for (int id = 0; id < size; id++) {
+            String label = ontologyClassLabels.get(iris[id]);
+            if (label != null) {
+                String pooled = labelPool.get(label);
+                if (pooled == null) {
+                    labelPool.put(label, label);
+                    pooled = label;
+                }
+                labels[id] = pooled;
+            }
+        }
+
+        // children, in CSR form
+        int[] childOffsets = new int[size + 1];
+        int edgeCount = 0;
+        for (int id = 0; id < size; id++) {
+            childOffsets[id] = edgeCount;
+            for (IRI childIri : ontologyClassChildren.get(iris[id])) {
+                Integer childId = ids.get(childIri);
+                if (childId != null && childId != id) {
+                    edgeCount++;
+                }
+            }
+        }
+        childOffsets[size] = edgeCount;
+        int[] childIds = new int[edgeCount];
+        for (int id = 0; id < size; id++) {
+            int next = childOffsets[id];
+            for (IRI childIri : ontologyClassChildren.get(iris[id])) {
+                Integer childId = ids.get(childIri);
+                if (childId != null && childId != id) {
+                    childIds[next++] = childId;
+                }
+            }
+        }
+
+        return new OntologyClassIndex(iris, ids, labels, childOffsets, childIds);
+    }
+
+    /**
+     * Returns the number of classes in this index
+     *
+     * @return the number of indexed classes
+     */
+    public int size() {
+        return iris.length;
+    }
+
+    /**
+     * Returns the id of the class with the given IRI, or -1 if this class is not indexed
+     *
+     * @param iri the IRI of the class
+     * @return the id of the class
+     */
+    public int getId(IRI iri) {
+        Integer id = ids.get(iri);
+        return id == null ? -1 : id;
+    }
+
+    public IRI getIRI(int id) {
+        return iris[id];
+    }
+
+    /**
+     * Returns the label of the class with the given id, or null if it has no (single) label
+     *
+     * @param id the id of the class
+     * @return the class label
+     */
+    public String getLabel(int id) {
+        return labels[id];
+    }
+
+    public int getChildCount(int id) {
+        return childOffsets[id + 1] - childOffsets[id];
+    }
+
+    /**
+     * Returns the offsets into {@link #getChildIds()} at which the children of each class begin.  This array has one
+     * more element than there are classes, so the children of class <code>id</code> end at <code>childOffsets[id +
+     * 1]</code>.  The returned array is shared and must not be modified.
+     *
+     * @return the child offsets of every class
+     */
+    public int[] getChildOffsets() {
+        return childOffsets;
+    }
+
+    /**
+     * Returns the ids of the children of every class, concatenated in id order.  The returned array is shared and must
+     * not be modified.
+     *
+     * @return the child ids of every class
+     */
+    public int[] getChildIds() {
+        return childIds;
+    }
+}
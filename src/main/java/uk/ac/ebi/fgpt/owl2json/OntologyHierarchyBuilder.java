@@ -1,14 +1,25 @@
 package uk.ac.ebi.fgpt.owl2json;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.semanticweb.owlapi.model.IRI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -21,6 +32,13 @@ import java.util.Set;
 public class OntologyHierarchyBuilder {
     private static Logger log = LoggerFactory.getLogger(OntologyHierarchyBuilder.class);
 
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    static {
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_DEFAULT);
+    }
+
     public static OntologyHierarchyNode generateHierarchy(OntologyLoader loader) {
         return generateHierarchy(loader, -1);
     }
@@ -43,21 +61,47 @@ public class OntologyHierarchyBuilder {
                                                           OntologyHierarchyNodeCounter counter,
                                                           int maxDepth,
                                                           int minSize) {
-        // track nodes which might be roots - remove from this set as we walk the tree
-        Set<IRI> possibleRoots = new HashSet<>();
-        possibleRoots.addAll(loader.getOntologyClassChildren().keySet());
+        return createView(buildHierarchy(loader, counter), maxDepth, minSize);
+    }
+
+    /**
+     * Builds the complete hierarchy of the classes in the given ontology, and attributes a size to each node using the
+     * given counter.  Nodes are not pruned or grouped, so the returned hierarchy can be used to create any number of
+     * views at different resolutions using {@link #createView(OntologyHierarchyNode, int, int)}.
+     *
+     * @param loader  the loader for the ontology to build a hierarchy of
+     * @param counter the counter to use to attribute sizes to each node
+     * @return the root node of the complete, counted hierarchy
+     */
+    public static OntologyHierarchyNode buildHierarchy(OntologyLoader loader, OntologyHierarchyNodeCounter counter) {
+        OntologyClassIndex index;
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("index")) {
+            index = loader.getOntologyClassIndex();
+            phase.setItems(index.size());
+        }
+
+        // track nodes which are children, and therefore by definition aren't roots
+        boolean[] isChild = new boolean[index.size()];
 
-        // map converted nodes
-        Map<IRI, OntologyHierarchyNode> hierarchyMap = new HashMap<>();
+        // classes on the stack of the node being built, shared between builds as each is cleared when it is popped
+        boolean[] onStack = new boolean[index.size()];
 
-        for (IRI iri : loader.getOntologyClassChildren().keySet()) {
-            buildNode(iri, loader, possibleRoots, hierarchyMap);
+        // converted nodes, indexed by class id
+        OntologyHierarchyNode[] hierarchy = new OntologyHierarchyNode[index.size()];
+
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("buildNode")) {
+            for (int id = 0; id < index.size(); id++) {
+                buildNode(id, index, isChild, onStack, hierarchy);
+            }
+            phase.setItems(index.size());
         }
 
         // once we've finished, get the root nodes
         Set<OntologyHierarchyNode> roots = new HashSet<>();
-        for (IRI rootNodeIri : possibleRoots) {
-            roots.add(hierarchyMap.get(rootNodeIri));
+        for (int id = 0; id < index.size(); id++) {
+            if (!isChild[id]) {
+                roots.add(hierarchy[id]);
+            }
         }
 
         // get the root node
@@ -76,20 +120,163 @@ public class OntologyHierarchyBuilder {
         }
 
         // attribute counts to each node in the tree
-        walkTreeAndCount(counter, rootNode);
+        int countedNodes;
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("count")) {
+            countedNodes = countHierarchy(rootNode, counter);
+            phase.setItems(countedNodes);
+        }
+        log.debug("Counted " + countedNodes + " distinct nodes in the hierarchy under " + rootNode.getName());
+        return rootNode;
+    }
 
-        // prune the tree to maxDepth
-        pruneHierarchy(rootNode, 0, maxDepth);
+    /**
+     * Creates a view of a (counted) hierarchy at a given resolution.  The view is pruned to <code>maxDepth</code>, so
+     * nodes at this depth have no children, and nodes with a size less than <code>minSize</code> are grouped, per
+     * parent, into a single "Other ..." node with the combined size of the grouped nodes.  Either may be -1, in which
+     * case the hierarchy is not pruned or grouped respectively.
+     * <p/>
+     * The view is a copy of the hierarchy: the original hierarchy is never modified, so any number of views can be
+     * created from it.  Each view has unmodifiable children, and shares a single copy of any node that appears more
+     * than once at the same depth.
+     *
+     * @param rootNode the root of the hierarchy to create a view of
+     * @param maxDepth the maximum depth of the view, or -1
+     * @param minSize  the minimum size of nodes in the view, or -1
+     * @return the root node of the view
+     */
+    public static OntologyHierarchyNode createView(OntologyHierarchyNode rootNode, int maxDepth, int minSize) {
+        // views of a node are the same wherever it appears at a given depth (or at any depth, if not pruning)
+        List<Map<OntologyHierarchyNode, OntologyHierarchyNode>> views = new ArrayList<>();
 
-        groupHierarchy(rootNode, minSize);
-        return rootNode;
+        // pruning and grouping happen in the same pass, so are measured as one phase
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("view")) {
+            int visitedNodes = 1;
+            Deque<ViewFrame> stack = new ArrayDeque<>();
+            OntologyHierarchyNode rootView = createLeafViewOrPush(rootNode, 0, maxDepth, stack);
+            while (!stack.isEmpty()) {
+                ViewFrame frame = stack.peek();
+                if (frame.children.hasNext()) {
+                    OntologyHierarchyNode childNode = frame.children.next();
+                    OntologyHierarchyNode childView = getView(views, childNode, frame.depth + 1, maxDepth);
+                    if (childView == null) {
+                        childView = createLeafViewOrPush(childNode, frame.depth + 1, maxDepth, stack);
+                        visitedNodes++;
+                    }
+                    if (childView != null) {
+                        frame.childViews.add(childView);
+                    }
+                }
+                else {
+                    stack.pop();
+                    OntologyHierarchyNode view = createGroupedView(frame.node, frame.childViews, minSize);
+                    putView(views, frame.node, frame.depth, maxDepth, view);
+                    if (stack.isEmpty()) {
+                        rootView = view;
+                    }
+                    else {
+                        stack.peek().childViews.add(view);
+                    }
+                }
+            }
+            phase.setItems(visitedNodes);
+            return rootView;
+        }
+    }
+
+    /**
+     * Splits a hierarchy into shards, so it can be written as several smaller files and loaded on demand.  The first
+     * shard is rooted at the root of the hierarchy, and each shard holds <code>shardDepth</code> levels of the
+     * hierarchy.  Every node with children that lies <code>shardDepth</code> levels below the root of a shard is the
+     * root of a further shard, so each shard should be written as a view pruned to <code>shardDepth</code> (see {@link
+     * #createView(OntologyHierarchyNode, int, int)}).  A node shared between several parts of the hierarchy roots a
+     * single shard.
+     * <p/>
+     * The given index is populated with the shard in which the children of each node are listed.  Nodes which root a
+     * shard are always indexed to that shard, and leaves to the first shard they appear in.
+     *
+     * @param rootNode   the root of the hierarchy to shard
+     * @param shardDepth the number of levels of the hierarchy in each shard, at least 1
+     * @param shardIndex a map to populate with the index of the shard for the URI of each node
+     * @return the root node of each shard, starting with the root node of the hierarchy
+     */
+    public static List<OntologyHierarchyNode> shardHierarchy(OntologyHierarchyNode rootNode,
+                                                             int shardDepth,
+                                                             Map<URI, Integer> shardIndex) {
+        if (shardDepth < 1) {
+            throw new IllegalArgumentException("Shard depth must be at least 1 (got " + shardDepth + ")");
+        }
+
+        List<OntologyHierarchyNode> shardRoots = new ArrayList<>();
+        Map<OntologyHierarchyNode, Integer> shardIds = new IdentityHashMap<>();
+        shardRoots.add(rootNode);
+        shardIds.put(rootNode, 0);
+        if (rootNode.getURI() != null) {
+            shardIndex.put(rootNode.getURI(), 0);
+        }
+
+        for (int shard = 0; shard < shardRoots.size(); shard++) {
+            // walk this shard down to shardDepth, revisiting shared nodes only if they are found higher up
+            Map<OntologyHierarchyNode, Integer> depths = new IdentityHashMap<>();
+            Deque<OntologyHierarchyNode> nodes = new ArrayDeque<>();
+            Deque<Integer> nodeDepths = new ArrayDeque<>();
+            nodes.push(shardRoots.get(shard));
+            nodeDepths.push(0);
+            while (!nodes.isEmpty()) {
+                OntologyHierarchyNode node = nodes.pop();
+                int depth = nodeDepths.pop();
+                Integer visitedDepth = depths.get(node);
+                if (visitedDepth != null && visitedDepth <= depth) {
+                    continue;
+                }
+                depths.put(node, depth);
+
+                for (OntologyHierarchyNode child : node.getChildren()) {
+                    if (depth + 1 < shardDepth) {
+                        indexShard(shardIndex, child, shard);
+                        nodes.push(child);
+                        nodeDepths.push(depth + 1);
+                    }
+                    else if (!child.getChildren().isEmpty()) {
+                        // this child is at the edge of the shard, so its children go in a shard of their own
+                        if (!shardIds.containsKey(child)) {
+                            shardIds.put(child, shardRoots.size());
+                            if (child.getURI() != null) {
+                                shardIndex.put(child.getURI(), shardRoots.size());
+                            }
+                            shardRoots.add(child);
+                        }
+                    }
+                    else {
+                        indexShard(shardIndex, child, shard);
+                    }
+                }
+            }
+        }
+        log.debug("Split the hierarchy under " + rootNode.getName() + " into " + shardRoots.size() + " shards");
+        return shardRoots;
+    }
+
+    /**
+     * Writes the index of a sharded hierarchy, mapping the URI of each node to the location of its shard, to the
+     * given output stream as a JSON object.
+     *
+     * @param shardLocations the location of the shard for each node URI
+     * @param out            the stream to write the JSON to
+     * @throws IOException if the index could not be written
+     */
+    public static void writeShardIndexAsJson(Map<URI, String> shardLocations, OutputStream out) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartObject();
+        for (Map.Entry<URI, String> shardLocation : shardLocations.entrySet()) {
+            generator.writeStringField(shardLocation.getKey().toString(), shardLocation.getValue());
+        }
+        generator.writeEndObject();
+        generator.close();
     }
 
     public static String convertOntologyHierarchyToJson(OntologyHierarchyNode ontologyHierarchyNode) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
-            mapper.setSerializationInclusion(JsonInclude.Include.NON_DEFAULT);
             return mapper.writeValueAsString(ontologyHierarchyNode);
         }
         catch (IOException e) {
@@ -97,101 +284,458 @@ public class OntologyHierarchyBuilder {
         }
     }
 
-    private static OntologyHierarchyNode buildNode(IRI nodeIRI,
-                                                   OntologyLoader loader,
-                                                   Set<IRI> possibleRoots,
-                                                   Map<IRI, OntologyHierarchyNode> hierarchyMap) {
-        if (hierarchyMap.containsKey(nodeIRI)) {
-            return hierarchyMap.get(nodeIRI);
+    /**
+     * Writes the given hierarchy as UTF-8 encoded JSON to the given stream.  Unlike {@link
+     * #convertOntologyHierarchyToJson(OntologyHierarchyNode)}, the JSON is never held in memory: each node is written
+     * to the stream as it is visited, so memory use does not depend on the size of the output.  The JSON written is the
+     * same as that returned by <code>convertOntologyHierarchyToJson</code>.  The stream is flushed, but not closed.
+     *
+     * @param ontologyHierarchyNode the root of the hierarchy to write
+     * @param out                   the stream to write to
+     * @throws IOException if the stream could not be written to
+     */
+    public static void writeOntologyHierarchyAsJson(OntologyHierarchyNode ontologyHierarchyNode, OutputStream out)
+            throws IOException {
+        writeOntologyHierarchy(ontologyHierarchyNode, HierarchyFormat.JSON, out);
+    }
+
+    /**
+     * Writes the given hierarchy to the given stream in the given format, with the same structure as {@link
+     * #writeOntologyHierarchyAsJson(OntologyHierarchyNode, OutputStream)}.  The stream is flushed, but not closed.
+     *
+     * @param ontologyHierarchyNode the root of the hierarchy to write
+     * @param format                the format to write the hierarchy in
+     * @param out                   the stream to write to
+     * @throws IOException if the stream could not be written to
+     */
+    public static void writeOntologyHierarchy(OntologyHierarchyNode ontologyHierarchyNode,
+                                              HierarchyFormat format,
+                                              OutputStream out) throws IOException {
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("write")) {
+            JsonGenerator generator = format.getFactory().createGenerator(out, JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            phase.setItems(writeNode(generator, ontologyHierarchyNode));
+            generator.close();
         }
+    }
 
-        Set<OntologyHierarchyNode> children = new HashSet<>();
-        if (loader.getOntologyClassChildren().containsKey(nodeIRI)) {
-            for (IRI childIRI : loader.getOntologyClassChildren().get(nodeIRI)) {
-                if (childIRI.equals(nodeIRI)) {
-                    continue;
+    /**
+     * Writes the given hierarchy to the given stream in a flat, columnar layout, in the given format.  Each distinct
+     * node is written once, however many parents it has, so the size of the output depends on the number of distinct
+     * nodes rather than the number of paths through the hierarchy.  Nodes are numbered in breadth first order from the
+     * root, which is node 0, and the output is an object of parallel arrays indexed by node number:
+     * <pre>
+     * {
+     *   "uris": [...],           // the URI of each node, or null
+     *   "names": [...],          // the name of each node
+     *   "sizes": [...],          // the size of each node
+     *   "datasetSizes": [[...]], // if counted against several datasets, the size of each node in each dataset
+     *   "childOffsets": [...],   // node n's children are children[childOffsets[n]] to children[childOffsets[n+1]-1]
+     *   "children": [...]        // the node numbers of the children of each node, in node order
+     * }
+     * </pre>
+     * The stream is flushed, but not closed.
+     *
+     * @param ontologyHierarchyNode the root of the hierarchy to write
+     * @param format                the format to write the hierarchy in
+     * @param out                   the stream to write to
+     * @throws IOException if the stream could not be written to
+     */
+    public static void writeFlatOntologyHierarchy(OntologyHierarchyNode ontologyHierarchyNode,
+                                                  HierarchyFormat format,
+                                                  OutputStream out) throws IOException {
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("write")) {
+            phase.setItems(writeFlatNodes(ontologyHierarchyNode, format, out));
+        }
+    }
+
+    /**
+     * Writes the flat layout described in {@link #writeFlatOntologyHierarchy(OntologyHierarchyNode, HierarchyFormat,
+     * OutputStream)}, returning the number of distinct nodes written
+     */
+    private static int writeFlatNodes(OntologyHierarchyNode ontologyHierarchyNode,
+                                      HierarchyFormat format,
+                                      OutputStream out) throws IOException {
+        // number each distinct node, breadth first
+        Map<OntologyHierarchyNode, Integer> ids = new IdentityHashMap<>();
+        List<OntologyHierarchyNode> nodes = new ArrayList<>();
+        ids.put(ontologyHierarchyNode, 0);
+        nodes.add(ontologyHierarchyNode);
+        int childCount = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            for (OntologyHierarchyNode child : nodes.get(i).getChildren()) {
+                if (!ids.containsKey(child)) {
+                    ids.put(child, nodes.size());
+                    nodes.add(child);
                 }
+                childCount++;
+            }
+        }
+        log.debug("Writing " + nodes.size() + " distinct nodes and " + childCount + " edges in a flat layout");
 
-                log.trace("Next child of " + nodeIRI + ": " + childIRI);
-                // childIRI is a child of nodeIRI and therefore by definition isn't a root
-                if (possibleRoots.contains(childIRI)) {
-                    possibleRoots.remove(childIRI);
+        JsonGenerator generator = format.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("uris");
+        for (OntologyHierarchyNode node : nodes) {
+            if (node.getURI() != null) {
+                generator.writeString(node.getURI().toString());
+            }
+            else {
+                generator.writeNull();
+            }
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("names");
+        for (OntologyHierarchyNode node : nodes) {
+            generator.writeString(node.getName());
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("sizes");
+        for (OntologyHierarchyNode node : nodes) {
+            generator.writeNumber(node.getSize());
+        }
+        generator.writeEndArray();
+        int datasets = ontologyHierarchyNode.getSizes() != null ? ontologyHierarchyNode.getSizes().length : 0;
+        if (datasets > 0) {
+            generator.writeArrayFieldStart("datasetSizes");
+            for (int dataset = 0; dataset < datasets; dataset++) {
+                generator.writeStartArray();
+                for (OntologyHierarchyNode node : nodes) {
+                    int[] sizes = node.getSizes();
+                    generator.writeNumber(sizes != null && dataset < sizes.length ? sizes[dataset] : 0);
                 }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeArrayFieldStart("childOffsets");
+        int offset = 0;
+        generator.writeNumber(offset);
+        for (OntologyHierarchyNode node : nodes) {
+            offset += node.getChildren().size();
+            generator.writeNumber(offset);
+        }
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("children");
+        for (OntologyHierarchyNode node : nodes) {
+            for (OntologyHierarchyNode child : node.getChildren()) {
+                generator.writeNumber(ids.get(child));
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+        return nodes.size();
+    }
 
-                // build the node for this child
-                OntologyHierarchyNode child = buildNode(childIRI, loader, possibleRoots, hierarchyMap);
-                if (child != null) {
-                    // guard against owl:nothing, owl:thing or other unexpected cases
-                    children.add(child);
+    /**
+     * Builds the node for the class with the given id, and all nodes beneath it that have not already been built.  The
+     * hierarchy is walked depth first using an explicit stack, so hierarchies of any depth can be built, and each node
+     * is built once all of its children have been.  <code>onStack</code> must be all false on entry, and is left all
+     * false on return, so a single array can be shared by every call.
+     */
+    private static OntologyHierarchyNode buildNode(int id,
+                                                   OntologyClassIndex index,
+                                                   boolean[] isChild,
+                                                   boolean[] onStack,
+                                                   OntologyHierarchyNode[] hierarchy) {
+        if (hierarchy[id] != null) {
+            return hierarchy[id];
+        }
+
+        int[] childIds = index.getChildIds();
+        int[] childOffsets = index.getChildOffsets();
+
+        // stack of class ids being built, and the position of the next child of each to visit
+        int[] stackIds = new int[16];
+        int[] stackPositions = new int[16];
+        int top = 0;
+        stackIds[0] = id;
+        stackPositions[0] = childOffsets[id];
+        onStack[id] = true;
+
+        while (top >= 0) {
+            int nodeId = stackIds[top];
+            int position = stackPositions[top];
+            if (position < childOffsets[nodeId + 1]) {
+                stackPositions[top]++;
+                int childId = childIds[position];
+                if (log.isTraceEnabled()) {
+                    log.trace("Next child of " + index.getIRI(nodeId) + ": " + index.getIRI(childId));
+                }
+                // childId is a child of nodeId and therefore by definition isn't a root
+                isChild[childId] = true;
+
+                if (hierarchy[childId] == null) {
+                    if (onStack[childId]) {
+                        log.warn("Cycle detected in hierarchy: " + index.getIRI(childId) + " is a descendant of " +
+                                         "itself; ignoring the edge from " + index.getIRI(nodeId));
+                        continue;
+                    }
+                    // descend to build the node for this child
+                    top++;
+                    if (top == stackIds.length) {
+                        stackIds = Arrays.copyOf(stackIds, top * 2);
+                        stackPositions = Arrays.copyOf(stackPositions, top * 2);
+                    }
+                    stackIds[top] = childId;
+                    stackPositions[top] = childOffsets[childId];
+                    onStack[childId] = true;
                 }
             }
+            else {
+                // all children built, so build this node
+                Set<OntologyHierarchyNode> children = new HashSet<>(index.getChildCount(nodeId) * 4 / 3 + 1);
+                for (int i = childOffsets[nodeId]; i < childOffsets[nodeId + 1]; i++) {
+                    if (hierarchy[childIds[i]] != null) {
+                        children.add(hierarchy[childIds[i]]);
+                    }
+                }
+                IRI nodeIRI = index.getIRI(nodeId);
+                String nodeLabel = index.getLabel(nodeId);
+                if (log.isTraceEnabled()) {
+                    log.trace("Generating hierarchy node for " + nodeIRI + " (" + nodeLabel + ")");
+                }
+
+                // add it to our hierarchy
+                hierarchy[nodeId] = new SimpleOntologyHierarchyNode(nodeIRI.toURI(), nodeLabel, children);
+                onStack[nodeId] = false;
+                top--;
+            }
+        }
 
-            // build this node
-            String nodeLabel = loader.getOntologyClassLabels().get(nodeIRI);
-            log.trace("Generating hierarchy node for " + nodeIRI + " (" + nodeLabel + ")");
-            OntologyHierarchyNode node =
-                    new SimpleOntologyHierarchyNode(nodeIRI.toURI(), nodeLabel, children);
+        return hierarchy[id];
+    }
 
-            // add it to our hierarchy map
-            hierarchyMap.put(nodeIRI, node);
+    /**
+     * Writes the given node and everything beneath it, returning the number of nodes written
+     */
+    private static int writeNode(JsonGenerator generator, OntologyHierarchyNode node) throws IOException {
+        int writtenNodes = 1;
+        Deque<Frame> stack = new ArrayDeque<>();
+        writeNodeStart(generator, node, stack);
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (frame.children.hasNext()) {
+                writeNodeStart(generator, frame.children.next(), stack);
+                writtenNodes++;
+            }
+            else {
+                stack.pop();
+                generator.writeEndArray();
+                writeNodeEnd(generator, frame.node);
+            }
+        }
+        return writtenNodes;
+    }
 
-            // and return
-            return node;
+    private static void writeNodeStart(JsonGenerator generator, OntologyHierarchyNode node, Deque<Frame> stack)
+            throws IOException {
+        writeNodeHead(generator, node);
+        if (!node.getChildren().isEmpty()) {
+            generator.writeArrayFieldStart("children");
+            stack.push(new Frame(node));
         }
         else {
-            return null;
+            writeNodeEnd(generator, node);
         }
     }
 
-    private static void pruneHierarchy(OntologyHierarchyNode currentNode, int currentDepth, int maxDepth) {
-        if (maxDepth == -1 || currentDepth < maxDepth) {
-            for (OntologyHierarchyNode childNode : currentNode.getChildren()) {
-                pruneHierarchy(childNode, currentDepth + 1, maxDepth);
+    /**
+     * Starts the JSON object for the given node, and writes the fields that come before its children
+     */
+    static void writeNodeHead(JsonGenerator generator, OntologyHierarchyNode node) throws IOException {
+        // only non-default properties are written, matching our mapper's serialization inclusion
+        generator.writeStartObject();
+        if (node.getURI() != null) {
+            generator.writeStringField("uri", node.getURI().toString());
+        }
+        if (node.getName() != null && !node.getName().isEmpty()) {
+            generator.writeStringField("name", node.getName());
+        }
+    }
+
+    /**
+     * Writes the fields of the given node that come after its children, and ends its JSON object
+     */
+    static void writeNodeEnd(JsonGenerator generator, OntologyHierarchyNode node) throws IOException {
+        if (node.getSize() != -1) {
+            generator.writeNumberField("size", node.getSize());
+        }
+        if (node.getSizes() != null) {
+            generator.writeArrayFieldStart("sizes");
+            for (int size : node.getSizes()) {
+                generator.writeNumber(size);
             }
+            generator.writeEndArray();
         }
-        else {
-            // this node is deeper than maxDepth, so remove children and set size of this node as total instead
-            log.debug("Pruning tree under " + currentNode.getName() + ": this has a depth of " + currentDepth);
-            currentNode.getChildren().clear();
-            log.debug(currentNode.getName() + " now has " + currentNode.getChildren().size() + " children and size " +
-                              currentNode.getSize());
+        generator.writeEndObject();
+    }
+
+    private static void indexShard(Map<URI, Integer> shardIndex, OntologyHierarchyNode node, int shard) {
+        if (node.getURI() != null && !shardIndex.containsKey(node.getURI())) {
+            shardIndex.put(node.getURI(), shard);
         }
     }
 
-    private static void groupHierarchy(OntologyHierarchyNode currentNode, int minSize) {
-        Set<OntologyHierarchyNode> childrenToRemove = new HashSet<>();
-        // recurse to children first, start at leaf nodes
-        for (OntologyHierarchyNode childNode : currentNode.getChildren()) {
-            groupHierarchy(childNode, minSize);
+    private static OntologyHierarchyNode createLeafViewOrPush(OntologyHierarchyNode node,
+                                                              int depth,
+                                                              int maxDepth,
+                                                              Deque<ViewFrame> stack) {
+        if (maxDepth == -1 || depth < maxDepth) {
+            stack.push(new ViewFrame(node, depth));
+            return null;
+        }
+        else {
+            // this node is at maxDepth, so prune its children - the size of this node is already the total
+            log.trace("Pruning tree under " + node.getName() + ": this has a depth of " + depth);
+            OntologyHierarchyNode view = new SimpleOntologyHierarchyNode(
+                    node.getURI(), node.getName(), Collections.<OntologyHierarchyNode>emptySet());
+            view.setSize(node.getSize());
+            view.setSizes(node.getSizes());
+            return view;
+        }
+    }
 
+    private static OntologyHierarchyNode createGroupedView(OntologyHierarchyNode node,
+                                                           List<OntologyHierarchyNode> childViews,
+                                                           int minSize) {
+        List<OntologyHierarchyNode> children = new ArrayList<>(childViews.size());
+        int removalSize = 0;
+        int[] removalSizes = null;
+        boolean removed = false;
+        for (OntologyHierarchyNode childView : childViews) {
             // is the size of the subtree for this child less than minSize?
-            if (childNode.getSize() < minSize) {
-                childrenToRemove.add(childNode);
+            if (childView.getSize() < minSize) {
+                removalSize += childView.getSize();
+                removalSizes = addSizes(removalSizes, childView.getSizes());
+                removed = true;
             }
+            else {
+                children.add(childView);
+            }
+        }
+        if (removed && removalSize > 0) {
+            // create a new "other ..." node and set the size to equal the total sizes of all removed nodes
+            OntologyHierarchyNode otherNode = new SimpleOntologyHierarchyNode("Other " + node.getName());
+            otherNode.setSize(removalSize);
+            otherNode.setSizes(removalSizes);
+            children.add(otherNode);
         }
 
-        if (!childrenToRemove.isEmpty()) {
-            int removalSize = 0;
-            for (OntologyHierarchyNode childToRemove : childrenToRemove) {
-                // remove those that are too small and group into "other"
-                removalSize += childToRemove.getSize();
-                currentNode.getChildren().remove(childToRemove);
-            }
+        OntologyHierarchyNode view = new SimpleOntologyHierarchyNode(
+                node.getURI(),
+                node.getName(),
+                children.isEmpty()
+                        ? Collections.<OntologyHierarchyNode>emptySet()
+                        : Collections.unmodifiableList(children));
+        view.setSize(node.getSize());
+        view.setSizes(node.getSizes());
+        return view;
+    }
+
+    private static int[] addSizes(int[] total, int[] sizes) {
+        if (sizes == null) {
+            return total;
+        }
+        if (total == null) {
+            return sizes.clone();
+        }
+        for (int i = 0; i < total.length && i < sizes.length; i++) {
+            total[i] += sizes[i];
+        }
+        return total;
+    }
 
-            if (removalSize > 0) {
-                // create a new "other ..." node and set the size to equal the total sizes of all removed nodes
-                OntologyHierarchyNode otherNode = new SimpleOntologyHierarchyNode("Other " + currentNode.getName());
-                otherNode.setSize(removalSize);
-                currentNode.getChildren().add(otherNode);
+    private static OntologyHierarchyNode getView(List<Map<OntologyHierarchyNode, OntologyHierarchyNode>> views,
+                                                 OntologyHierarchyNode node,
+                                                 int depth,
+                                                 int maxDepth) {
+        int key = maxDepth == -1 ? 0 : depth;
+        return key < views.size() ? views.get(key).get(node) : null;
+    }
+
+    private static void putView(List<Map<OntologyHierarchyNode, OntologyHierarchyNode>> views,
+                                OntologyHierarchyNode node,
+                                int depth,
+                                int maxDepth,
+                                OntologyHierarchyNode view) {
+        int key = maxDepth == -1 ? 0 : depth;
+        while (views.size() <= key) {
+            views.add(new IdentityHashMap<OntologyHierarchyNode, OntologyHierarchyNode>());
+        }
+        views.get(key).put(node, view);
+    }
+
+    /**
+     * Attributes a size to every node in the hierarchy under (and including) the given root, using the given counter.
+     * Nodes are counted from the leaves up, so that the sizes of all children of a node are known before it is
+     * counted.
+     * <p/>
+     * Nodes with several parents are shared between them, so the hierarchy is a DAG rather than a tree.  Each distinct
+     * node is visited and counted exactly once, however many paths lead to it, and the size attributed to it is reused
+     * wherever it appears; in ontologies with heavy multiple inheritance, this is far fewer visits than there are paths
+     * through the hierarchy.
+     * <p/>
+     * Counters that implement {@link OntologyHierarchyBulkCounter} count the whole hierarchy in one pass over a {@link
+     * PostOrderedHierarchy}; other counters are adapted to do the same, one node at a time.
+     *
+     * @param rootNode the root of the hierarchy to count
+     * @param counter  the counter to use to evaluate the size of each node
+     * @return the number of distinct nodes visited
+     */
+    public static int countHierarchy(OntologyHierarchyNode rootNode, OntologyHierarchyNodeCounter counter) {
+        // post order, so we know we count from the leaf nodes up
+        PostOrderedHierarchy postOrderedHierarchy = PostOrderedHierarchy.build(rootNode);
+        if (counter instanceof OntologyHierarchyNodeMultiCounter) {
+            OntologyHierarchyNodeMultiCounter multiCounter = (OntologyHierarchyNodeMultiCounter) counter;
+            for (int id = 0; id < postOrderedHierarchy.size(); id++) {
+                OntologyHierarchyNode node = postOrderedHierarchy.getNode(id);
+                int[] sizes = multiCounter.countAll(node);
+                node.setSizes(sizes);
+                node.setSize(sizes[0]);
             }
         }
+        else {
+            OntologyHierarchyBulkCounter bulkCounter = counter instanceof OntologyHierarchyBulkCounter
+                    ? (OntologyHierarchyBulkCounter) counter
+                    : new OntologyHierarchyNodeCounterAdapter(counter);
+            int[] sizes = new int[postOrderedHierarchy.size()];
+            bulkCounter.countAll(postOrderedHierarchy, sizes);
+            for (int id = 0; id < postOrderedHierarchy.size(); id++) {
+                postOrderedHierarchy.getNode(id).setSize(sizes[id]);
+            }
+        }
+        return postOrderedHierarchy.size();
+    }
+
+    /**
+     * A node on the explicit stack of a depth first traversal, with an iterator over the children still to visit
+     */
+    private static class Frame {
+        private final OntologyHierarchyNode node;
+        private final Iterator<OntologyHierarchyNode> children;
+
+        private Frame(OntologyHierarchyNode node) {
+            this.node = node;
+            this.children = node.getChildren().iterator();
+        }
     }
 
-    private static void walkTreeAndCount(OntologyHierarchyNodeCounter counter, OntologyHierarchyNode node) {
-        // recurse first, so we know we count from the leaf nodes up
-        for (OntologyHierarchyNode childNode : node.getChildren()) {
-            walkTreeAndCount(counter, childNode);
+    /**
+     * A node on the explicit stack used when creating a view, with the views created so far of its children
+     */
+    private static class ViewFrame {
+        private final OntologyHierarchyNode node;
+        private final Iterator<OntologyHierarchyNode> children;
+        private final int depth;
+        private final List<OntologyHierarchyNode> childViews = new ArrayList<>();
+
+        private ViewFrame(OntologyHierarchyNode node, int depth) {
+            this.node = node;
+            this.children = node.getChildren().iterator();
+            this.depth = depth;
         }
-        node.setSize(counter.count(node));
     }
 }
@@ -0,0 +1,24 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+/**
+ * A mechanism for attributing sizes to every node of an ontology hierarchy at once.  Nodes are supplied as a {@link
+ * uk.ac.ebi.fgpt.owl2json.PostOrderedHierarchy}, so children are always counted before their parents, and sizes are
+ * written to a primitive array indexed by node number.  This lets counters aggregate sizes over the whole hierarchy in
+ * one loop, without iterating over child collections or allocating anything per node.
+ * <p/>
+ * Any {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeCounter} can be used as a bulk counter with an {@link
+ * uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeCounterAdapter}.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public interface OntologyHierarchyBulkCounter {
+    /**
+     * Evaluates the size of every node in the given hierarchy
+     *
+     * @param hierarchy the nodes to count, in post-order
+     * @param sizes     the array to write the size of each node to, indexed by node number, with at least as many
+     *                  elements as there are nodes
+     */
+    void countAll(PostOrderedHierarchy hierarchy, int[] sizes);
+}
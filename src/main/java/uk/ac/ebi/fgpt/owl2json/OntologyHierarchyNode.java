@@ -7,7 +7,9 @@ import java.util.Collection;
  * An object that represents a node in a directed graph representing an ontology hierarchy.  Each node should have a
  * name (usually it's label), a collection of children (formally, all nodes representing terms for which the term
  * represented by this term are related to with an is_a relationship) and a size.  How the size is determined is
- * evaluated using an {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeCounter}
+ * evaluated using an {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeCounter}.  Nodes counted against several
+ * datasets at once, using an {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeMultiCounter}, also have a vector of
+ * sizes, one per dataset; the size of such a node is its size in the first dataset.
  *
  * @author Tony Burdett
  * @date 01/07/13
@@ -22,4 +24,13 @@ public interface OntologyHierarchyNode {
     int getSize();
 
     void setSize(int size);
+
+    /**
+     * Returns the size of this node in each dataset it was counted against, or null if it was only counted once
+     *
+     * @return the sizes of this node, or null
+     */
+    int[] getSizes();
+
+    void setSizes(int[] sizes);
 }
@@ -0,0 +1,29 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+/**
+ * Adapts an {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeCounter} to the {@link
+ * uk.ac.ebi.fgpt.owl2json.OntologyHierarchyBulkCounter} interface, by counting each node in turn.  As counters may use
+ * the sizes of child nodes, the size of each node is also set on the node as soon as it is counted.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class OntologyHierarchyNodeCounterAdapter implements OntologyHierarchyBulkCounter {
+    private final OntologyHierarchyNodeCounter counter;
+
+    public OntologyHierarchyNodeCounterAdapter(OntologyHierarchyNodeCounter counter) {
+        this.counter = counter;
+    }
+
+    public OntologyHierarchyNodeCounter getCounter() {
+        return counter;
+    }
+
+    @Override public void countAll(PostOrderedHierarchy hierarchy, int[] sizes) {
+        for (int id = 0; id < hierarchy.size(); id++) {
+            OntologyHierarchyNode node = hierarchy.getNode(id);
+            sizes[id] = counter.count(node);
+            node.setSize(sizes[id]);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+/**
+ * An {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeCounter} that attributes a vector of sizes to each node, one
+ * for each of several datasets, so that one hierarchy can be counted against every dataset in a single traversal.  As
+ * with single counts, nodes are counted after all of their children, so implementations can use the sizes already
+ * attributed to each child (see {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNode#getSizes()}).
+ * <p/>
+ * The size returned by {@link #count(OntologyHierarchyNode)} should be the size in the first dataset.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public interface OntologyHierarchyNodeMultiCounter extends OntologyHierarchyNodeCounter {
+    /**
+     * Returns the names of the datasets this counter counts against, in the order of the sizes it evaluates
+     *
+     * @return the names of each dataset
+     */
+    String[] getDatasetNames();
+
+    /**
+     * Evaluates and returns the size of a given ontology hierarchy node in each dataset
+     *
+     * @param node the node to count
+     * @return the sizes that should be attributed to this node, in the order of {@link #getDatasetNames()}
+     */
+    int[] countAll(OntologyHierarchyNode node);
+}
@@ -33,7 +33,7 @@ public interface OntologyLoader {
 
     /**
      * Returns a mapping between the IRIs that identify classes in the loaded ontology and the rdfs:label of each of
-     * their asserted parent classes.
+     * their asserted parent classes.  The returned sets are unmodifiable, and may be shared between classes.
      *
      * @return the class type labels in this ontology, indexed by class IRI
      */
@@ -54,4 +54,14 @@ public interface OntologyLoader {
      * @return child classes in this ontology, indexed by the parent class IRI
      */
     Map<IRI, Set<IRI>> getOntologyClassChildren();
+
+    /**
+     * Returns a compact index over the classes in the loaded ontology, in which each class is identified by a dense
+     * integer id and children are held as arrays of ids.  This holds the same labels and children as {@link
+     * #getOntologyClassLabels()} and {@link #getOntologyClassChildren()}, and is better suited to traversing large
+     * hierarchies.
+     *
+     * @return an index over the classes in this ontology
+     */
+    OntologyClassIndex getOntologyClassIndex();
 }
@@ -0,0 +1,298 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import org.semanticweb.owlapi.model.IRI;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact binary snapshot of the data extracted by an {@link OntologyLoader}: the ontology IRI, and the class labels,
+ * type labels, synonyms and children.  Snapshots are written once an ontology has been loaded, and can be read back
+ * (by memory mapping the snapshot file) to restore a loader without parsing or classifying the ontology again.
+ * <p/>
+ * All strings (IRIs, labels and synonyms) are written once, to a string table at the start of the snapshot, and
+ * referred to by index thereafter.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class OntologySnapshot {
+    private static final int MAGIC = 0x4F324A53;
+    private static final int VERSION = 1;
+
+    private final IRI ontologyIRI;
+    private final Map<IRI, String> ontologyClassLabels;
+    private final Map<IRI, Set<String>> ontologyClassTypeLabels;
+    private final Map<IRI, Set<String>> ontologyClassSynonyms;
+    private final Map<IRI, Set<IRI>> ontologyClassChildren;
+
+    public OntologySnapshot(IRI ontologyIRI,
+                            Map<IRI, String> ontologyClassLabels,
+                            Map<IRI, Set<String>> ontologyClassTypeLabels,
+                            Map<IRI, Set<String>> ontologyClassSynonyms,
+                            Map<IRI, Set<IRI>> ontologyClassChildren) {
+        this.ontologyIRI = ontologyIRI;
+        this.ontologyClassLabels = ontologyClassLabels;
+        this.ontologyClassTypeLabels = ontologyClassTypeLabels;
+        this.ontologyClassSynonyms = ontologyClassSynonyms;
+        this.ontologyClassChildren = ontologyClassChildren;
+    }
+
+    public IRI getOntologyIRI() {
+        return ontologyIRI;
+    }
+
+    public Map<IRI, String> getOntologyClassLabels() {
+        return ontologyClassLabels;
+    }
+
+    public Map<IRI, Set<String>> getOntologyClassTypeLabels() {
+        return ontologyClassTypeLabels;
+    }
+
+    public Map<IRI, Set<String>> getOntologyClassSynonyms() {
+        return ontologyClassSynonyms;
+    }
+
+    public Map<IRI, Set<IRI>> getOntologyClassChildren() {
+        return ontologyClassChildren;
+    }
+
+    /**
+     * Generates a key for a snapshot of the given ontology file, loaded with the given settings.  The key is a SHA-1
+     * hash of the contents of the file and the settings, so changes to either will result in a different key.
+     *
+     * @param ontologyFile the ontology file that will be loaded
+     * @param settings     a description of the loader settings that affect the extracted data
+     * @return a hex encoded key for the snapshot
+     * @throws IOException if the ontology file could not be read
+     */
+    public static String generateKey(File ontologyFile, String settings) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[65536];
+            try (FileInputStream in = new FileInputStream(ontologyFile)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            digest.update(settings.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * Reads a snapshot from the given file, by memory mapping it
+     *
+     * @param snapshotFile the file to read
+     * @return the snapshot read from this file
+     * @throws IOException if the file could not be read, or is not a snapshot
+     */
+    public static OntologySnapshot read(File snapshotFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(snapshotFile + " is not an ontology snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(snapshotFile + " is a version " + version + " snapshot, " +
+                                              "expected version " + VERSION);
+            }
+
+            // string table, with IRIs created on demand
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            IRI[] iris = new IRI[strings.length];
+
+            IRI ontologyIRI = readIRI(buffer, strings, iris);
+
+            int labelCount = buffer.getInt();
+            Map<IRI, String> labels = new HashMap<>(labelCount * 4 / 3 + 1);
+            for (int i = 0; i < labelCount; i++) {
+                IRI clsIri = readIRI(buffer, strings, iris);
+                labels.put(clsIri, strings[buffer.getInt()]);
+            }
+
+            Map<IRI, Set<String>> typeLabels = readStringSets(buffer, strings, iris);
+            Map<IRI, Set<String>> synonyms = readStringSets(buffer, strings, iris);
+
+            int childrenCount = buffer.getInt();
+            Map<IRI, Set<IRI>> children = new HashMap<>(childrenCount * 4 / 3 + 1);
+            for (int i = 0; i < childrenCount; i++) {
+                IRI clsIri = readIRI(buffer, strings, iris);
+                int size = buffer.getInt();
+                Set<IRI> childIris = new HashSet<>(size * 4 / 3 + 1);
+                for (int j = 0; j < size; j++) {
+                    childIris.add(readIRI(buffer, strings, iris));
+                }
+                children.put(clsIri, childIris);
+            }
+
+            return new OntologySnapshot(ontologyIRI, labels, typeLabels, synonyms, children);
+        }
+        catch (RuntimeException e) {
+            // buffer underflows, bad indices etc - treat any as a corrupt snapshot
+            throw new IOException(snapshotFile + " is not a valid ontology snapshot", e);
+        }
+    }
+
+    /**
+     * Writes this snapshot to the given file.  The snapshot is written to a temporary file first and then moved into
+     * place, so a concurrent reader will never see a partially written snapshot.
+     *
+     * @param snapshotFile the file to write to
+     * @throws IOException if the snapshot could not be written
+     */
+    public void write(File snapshotFile) throws IOException {
+        // build the string table
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        index(ontologyIRI.toString(), stringIndex, strings);
+        for (Map.Entry<IRI, String> entry : ontologyClassLabels.entrySet()) {
+            index(entry.getKey().toString(), stringIndex, strings);
+            index(entry.getValue(), stringIndex, strings);
+        }
+        for (Map.Entry<IRI, Set<String>> entry : ontologyClassTypeLabels.entrySet()) {
+            index(entry.getKey().toString(), stringIndex, strings);
+            indexAll(entry.getValue(), stringIndex, strings);
+        }
+        for (Map.Entry<IRI, Set<String>> entry : ontologyClassSynonyms.entrySet()) {
+            index(entry.getKey().toString(), stringIndex, strings);
+            indexAll(entry.getValue(), stringIndex, strings);
+        }
+        for (Map.Entry<IRI, Set<IRI>> entry : ontologyClassChildren.entrySet()) {
+            index(entry.getKey().toString(), stringIndex, strings);
+            for (IRI child : entry.getValue()) {
+                index(child.toString(), stringIndex, strings);
+            }
+        }
+
+        File tempFile = new File(snapshotFile.getAbsoluteFile().getParentFile(), snapshotFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(stringIndex.get(ontologyIRI.toString()));
+
+            out.writeInt(ontologyClassLabels.size());
+            for (Map.Entry<IRI, String> entry : ontologyClassLabels.entrySet()) {
+                out.writeInt(stringIndex.get(entry.getKey().toString()));
+                out.writeInt(stringIndex.get(entry.getValue()));
+            }
+
+            writeStringSets(out, ontologyClassTypeLabels, stringIndex);
+            writeStringSets(out, ontologyClassSynonyms, stringIndex);
+
+            out.writeInt(ontologyClassChildren.size());
+            for (Map.Entry<IRI, Set<IRI>> entry : ontologyClassChildren.entrySet()) {
+                out.writeInt(stringIndex.get(entry.getKey().toString()));
+                out.writeInt(entry.getValue().size());
+                for (IRI child : entry.getValue()) {
+                    out.writeInt(stringIndex.get(child.toString()));
+                }
+            }
+        }
+        Files.move(tempFile.toPath(),
+                   snapshotFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static IRI readIRI(ByteBuffer buffer, String[] strings, IRI[] iris) {
+        int index = buffer.getInt();
+        if (iris[index] == null) {
+            iris[index] = IRI.create(strings[index]);
+        }
+        return iris[index];
+    }
+
+    private static Map<IRI, Set<String>> readStringSets(ByteBuffer buffer, String[] strings, IRI[] iris) {
+        int count = buffer.getInt();
+        Map<IRI, Set<String>> stringSets = new HashMap<>(count * 4 / 3 + 1);
+        // identical sets (e.g. the type labels of siblings) are pooled, so each is only held once
+        Map<Set<String>, Set<String>> pool = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            IRI clsIri = readIRI(buffer, strings, iris);
+            int size = buffer.getInt();
+            Set<String> values = new HashSet<>(size * 4 / 3 + 1);
+            for (int j = 0; j < size; j++) {
+                values.add(strings[buffer.getInt()]);
+            }
+            Set<String> pooled = pool.get(values);
+            if (pooled == null) {
+                pooled = Collections.unmodifiableSet(values);
+                pool.put(pooled, pooled);
+            }
+            stringSets.put(clsIri, pooled);
+        }
+        return stringSets;
+    }
+
+    private static void writeStringSets(DataOutputStream out,
+                                        Map<IRI, Set<String>> stringSets,
+                                        Map<String, Integer> stringIndex) throws IOException {
+        out.writeInt(stringSets.size());
+        for (Map.Entry<IRI, Set<String>> entry : stringSets.entrySet()) {
+            out.writeInt(stringIndex.get(entry.getKey().toString()));
+            out.writeInt(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                out.writeInt(stringIndex.get(value));
+            }
+        }
+    }
+
+    private static void index(String string, Map<String, Integer> stringIndex, List<String> strings) {
+        if (!stringIndex.containsKey(string)) {
+            stringIndex.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static void indexAll(Collection<String> values, Map<String, Integer> stringIndex, List<String> strings) {
+        for (String value : values) {
+            index(value, stringIndex, strings);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, read-only view of the distinct nodes of an ontology hierarchy in post-order, for counters that aggregate
+ * sizes in a single loop (see {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyBulkCounter}).  Each distinct node is
+ * numbered once, from 0 to {@link #size()} - 1, such that every node is numbered after all of its children; the root
+ * is therefore the last node.  Children are held in compressed sparse row form: the numbers of the children of node
+ * <code>i</code> are <code>childIds[childOffsets[i]]</code> up to (but excluding) <code>childIds[childOffsets[i +
+ * 1]]</code>.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class PostOrderedHierarchy {
+    private final OntologyHierarchyNode[] nodes;
+    private final String[] uris;
+    private final int[] childOffsets;
+    private final int[] childIds;
+
+    private PostOrderedHierarchy(OntologyHierarchyNode[] nodes, String[] uris, int[] childOffsets, int[] childIds) {
+        this.nodes = nodes;
+        this.uris = uris;
+        this.childOffsets = childOffsets;
+        this.childIds = childIds;
+    }
+
+    /**
+     * Numbers the distinct nodes of the given hierarchy in post-order.  The hierarchy must be acyclic, as built by
+     * {@link OntologyHierarchyBuilder}.
+     *
+     * @param rootNode the root of the hierarchy
+     * @return the post-ordered hierarchy
+     */
+    public static PostOrderedHierarchy build(OntologyHierarchyNode rootNode) {
+        Map<OntologyHierarchyNode, Integer> ids = new IdentityHashMap<>();
+        List<OntologyHierarchyNode> nodes = new ArrayList<>();
+
+        // depth first, numbering each node once all of its children are numbered
+        List<OntologyHierarchyNode> stackNodes = new ArrayList<>();
+        List<Iterator<OntologyHierarchyNode>> stackChildren = new ArrayList<>();
+        ids.put(rootNode, -1);
+        stackNodes.add(rootNode);
+        stackChildren.add(rootNode.getChildren().iterator());
+        int edges = 0;
+        while (!stackNodes.isEmpty()) {
+            int top = stackNodes.size() - 1;
+            Iterator<OntologyHierarchyNode> children = stackChildren.get(top);
+            if (children.hasNext()) {
+                OntologyHierarchyNode child = children.next();
+                edges++;
+                if (!ids.containsKey(child)) {
+                    ids.put(child, -1);
+                    stackNodes.add(child);
+                    stackChildren.add(child.getChildren().iterator());
+                }
+            }
+            else {
+                OntologyHierarchyNode node = stackNodes.remove(top);
+                stackChildren.remove(top);
+                ids.put(node, nodes.size());
+                nodes.add(node);
+            }
+        }
+
+        OntologyHierarchyNode[] nodeArray = nodes.toArray(new OntologyHierarchyNode[nodes.size()]);
+        String[] uris = new String[nodeArray.length];
+        int[] childOffsets = new int[nodeArray.length + 1];
+        int[] childIds = new int[edges];
+        int offset = 0;
+        for (int i = 0; i < nodeArray.length; i++) {
+            // java.net.URI caches its string form, so these strings are shared with the nodes
+            uris[i] = nodeArray[i].getURI() != null ? nodeArray[i].getURI().toString() : null;
+            childOffsets[i] = offset;
+            for (OntologyHierarchyNode child : nodeArray[i].getChildren()) {
+                childIds[offset++] = ids.get(child);
+            }
+        }
+        childOffsets[nodeArray.length] = offset;
+        return new PostOrderedHierarchy(nodeArray, uris, childOffsets, childIds);
+    }
+
+    /**
+     * Returns the number of distinct nodes in this hierarchy
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    public OntologyHierarchyNode getNode(int id) {
+        return nodes[id];
+    }
+
+    /**
+     * Returns the string form of the URI of the node with the given number, or null if the node has no URI
+     *
+     * @param id the number of the node
+     * @return the node URI, as a string
+     */
+    public String getURI(int id) {
+        return uris[id];
+    }
+
+    public int getChildCount(int id) {
+        return childOffsets[id + 1] - childOffsets[id];
+    }
+
+    /**
+     * Returns the offsets into {@link #getChildIds()} at which the children of each node begin.  This array has one
+     * more element than there are nodes, so the children of node <code>id</code> end at <code>childOffsets[id +
+     * 1]</code>.  The returned array is shared and must not be modified.
+     *
+     * @return the child offsets of every node
+     */
+    public int[] getChildOffsets() {
+        return childOffsets;
+    }
+
+    /**
+     * Returns the numbers of the children of every node, concatenated in node order.  The returned array is shared and
+     * must not be modified.
+     *
+     * @return the child numbers of every node
+     */
+    public int[] getChildIds() {
+        return childIds;
+    }
+}
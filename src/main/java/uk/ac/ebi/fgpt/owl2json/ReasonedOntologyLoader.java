@@ -6,6 +6,9 @@ import org.semanticweb.owlapi.model.OWLAnnotationProperty;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerConfiguration;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
@@ -14,49 +17,216 @@ import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
 import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
 import org.slf4j.Logger;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Loads an ontology using the OWLAPI and a HermiT reasoner to classify the ontology.  This allows for richer typing
- * information on each class to be provided
+ * Loads an ontology using the OWLAPI and a reasoner (HermiT, by default) to classify the ontology.  This allows for
+ * richer typing information on each class to be provided
  *
  * @author Tony Burdett
  * @date 03/06/13
  */
 public class ReasonedOntologyLoader extends AbstractOntologyLoader {
+    private static final int EXTRACTION_CHUNK_SIZE = 1024;
+
+    private OWLReasonerFactory reasonerFactory = new Reasoner.ReasonerFactory();
+    private String reasonerName = ReasonerFactoryLocator.HERMIT;
+    private long classificationTime = -1;
+    private long extractionTime = -1;
+
+    private int extractionThreads = 1;
+    private boolean topDownExtraction = false;
+
+    private OWLOntology ontology;
+    private OWLReasoner reasoner;
+    private OWLClass obsoleteClass;
+    private Set<OWLClass> obsoleteClasses;
+
+    /**
+     * Returns the factory used to create the reasoner that classifies the ontology
+     *
+     * @return the reasoner factory in use
+     */
+    public OWLReasonerFactory getReasonerFactory() {
+        return reasonerFactory;
+    }
+
+    /**
+     * Sets the factory used to create the reasoner that classifies the ontology.  Defaults to HermiT.  Cheaper
+     * reasoners (for example, the OWLAPI structural reasoner or an EL reasoner) can be supplied here for ontologies that
+     * do not need full classification; see {@link ReasonerFactoryLocator} to obtain a factory by name.
+     *
+     * @param reasonerFactory the reasoner factory to use
+     */
+    public void setReasonerFactory(OWLReasonerFactory reasonerFactory) {
+        setReasonerFactory(reasonerFactory, ReasonerFactoryLocator.getReasonerName(reasonerFactory));
+    }
+
+    /**
+     * Sets the factory used to create the reasoner that classifies the ontology, along with the name to report it by -
+     * normally the name it was located under (see {@link ReasonerFactoryLocator#locate(String)}).
+     *
+     * @param reasonerFactory the reasoner factory to use
+     * @param reasonerName    the name to report the reasoner by
+     */
+    public void setReasonerFactory(OWLReasonerFactory reasonerFactory, String reasonerName) {
+        this.reasonerFactory = reasonerFactory;
+        this.reasonerName = reasonerName;
+    }
+
+    /**
+     * Returns the name the reasoner that classifies the ontology is reported by
+     *
+     * @return the reasoner name
+     */
+    public String getReasonerName() {
+        return reasonerName;
+    }
+
+    /**
+     * Returns the time, in milliseconds, that the reasoner took to classify the ontology, or -1 if this loader has not
+     * yet been initialized
+     *
+     * @return the classification time in milliseconds
+     */
+    public long getClassificationTime() {
+        return classificationTime;
+    }
+
+    /**
+     * Returns the time, in milliseconds, taken to extract labels, types, synonyms and children from the classified
+     * ontology so far, or -1 if this loader has not yet been initialized
+     *
+     * @return the extraction time in milliseconds
+     */
+    public long getExtractionTime() {
+        return extractionTime;
+    }
+
+    @Override protected String getSnapshotSettings() {
+        return super.getSnapshotSettings() + ";reasoner=" + getReasonerFactory().getClass().getName();
+    }
+
+    /**
+     * Returns the number of threads used to extract labels, types, synonyms and children from each class once the
+     * ontology has been classified.
+     *
+     * @return the number of extraction threads
+     */
+    public int getExtractionThreads() {
+        return extractionThreads;
+    }
+
+    /**
+     * Sets the number of threads used to extract labels, types, synonyms and children from each class once the
+     * ontology has been classified.  Defaults to 1, which extracts each class in turn on the calling thread.  Values
+     * greater than 1 partition the classes in the ontology between a fixed pool of worker threads; the resulting maps
+     * are identical.
+     *
+     * @param extractionThreads the number of extraction threads
+     */
+    public void setExtractionThreads(int extractionThreads) {
+        if (extractionThreads < 1) {
+            throw new IllegalArgumentException("Extraction threads must be at least 1 (got " + extractionThreads + ")");
+        }
+        this.extractionThreads = extractionThreads;
+    }
+
+    /**
+     * Returns whether class types and obsolete status are derived from a single top-down walk over the inferred class
+     * hierarchy, rather than by querying the reasoner for the ancestors of each class in turn.
+     *
+     * @return true if top-down extraction is in use
+     */
+    public boolean isTopDownExtraction() {
+        return topDownExtraction;
+    }
+
+    /**
+     * Sets whether class types and obsolete status should be derived from a single top-down walk over the inferred
+     * class hierarchy.  In this mode the reasoner is only asked for the direct subclasses of each node, the obsolete
+     * subtree is computed once, and the type labels of each class are held as a {@link SharedLabelSet} referring to the
+     * type labels of its direct parents, so each class and each rdfs:label is visited once.  The resulting maps are the same as those
+     * produced by per-class extraction.  Extraction threads are not used in this mode.
+     *
+     * @param topDownExtraction true to use top-down extraction
+     */
+    public void setTopDownExtraction(boolean topDownExtraction) {
+        this.topDownExtraction = topDownExtraction;
+    }
+
     protected void loadOntology() throws OWLOntologyCreationException {
         getLog().debug("Loading ontology...");
-        OWLOntology ontology = getManager().loadOntology(IRI.create(getOntologyURI()));
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("parse")) {
+            ontology = getManager().loadOntology(IRI.create(getOntologyURI()));
+            phase.setItems(ontology.getClassesInSignature().size());
+        }
         IRI ontologyIRI = ontology.getOntologyID().getOntologyIRI();
         setOntologyIRI(ontologyIRI);
         getLog().debug("Successfully loaded ontology " + ontologyIRI);
 
-        getLog().debug("Trying to create a reasoner over ontology '" + getOntologyURI() + "'");
-        OWLReasonerFactory factory = new Reasoner.ReasonerFactory();
+        OWLReasonerFactory factory = getReasonerFactory();
+        getLog().debug("Trying to create a " + getReasonerName() + " reasoner " +
+                               "over ontology '" + getOntologyURI() + "'");
         ReasonerProgressMonitor progressMonitor = new LoggingReasonerProgressMonitor(getLog());
         OWLReasonerConfiguration config = new SimpleConfiguration(progressMonitor);
-        OWLReasoner reasoner = factory.createReasoner(ontology, config);
+        long classificationStart = System.currentTimeMillis();
+        boolean satisfiable;
+        try (ConversionMetrics.Phase phase = ConversionMetrics.startPhase("classify")) {
+            reasoner = factory.createReasoner(ontology, config);
 
-        getLog().debug("Precomputing inferences...");
-        reasoner.precomputeInferences();
+            getLog().debug("Precomputing inferences...");
+            reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY);
 
-        getLog().debug("Checking ontology consistency...");
-        reasoner.isConsistent();
+            getLog().debug("Checking ontology consistency...");
+            reasoner.isConsistent();
 
-        getLog().debug("Checking for unsatisfiable classes...");
-        if (reasoner.getUnsatisfiableClasses().getEntitiesMinusBottom().size() > 0) {
+            getLog().debug("Checking for unsatisfiable classes...");
+            satisfiable = reasoner.getUnsatisfiableClasses().getEntitiesMinusBottom().isEmpty();
+            phase.setItems(ontology.getClassesInSignature().size());
+        }
+        if (!satisfiable) {
             throw new OWLOntologyCreationException(
                     "Once classified, unsatisfiable classes were detected in '" + ontologyIRI + "'");
         }
         else {
-            getLog().debug("Reasoning complete! ");
+            classificationTime = System.currentTimeMillis() - classificationStart;
+            extractionTime = 0;
+            getLog().info("Classified '" + ontologyIRI + "' using " + getReasonerName() + " " +
+                                  "in " + classificationTime + "ms");
         }
 
-        OWLClass obsoleteClass = getFactory().getOWLClass(
+        // obsolete classes are the obsolete class itself and all of its subclasses, which we can get in one go
+        obsoleteClass = getFactory().getOWLClass(
                 IRI.create("http://www.geneontology.org/formats/oboInOwl#ObsoleteClass"));
+        obsoleteClasses = new HashSet<>();
+        if (ontology.getClassesInSignature().contains(obsoleteClass)) {
+            obsoleteClasses.add(obsoleteClass);
+            obsoleteClasses.addAll(reasoner.getSubClasses(obsoleteClass, false).getFlattened());
+        }
+    }
 
-        Set<OWLClass> allClasses = ontology.getClassesInSignature();
+    @Override protected void releaseOntology() {
+        reasoner.dispose();
+        reasoner = null;
+        ontology = null;
+    }
+
+    protected void extractClassData(Set<ClassData> classData) throws OWLOntologyCreationException {
+        List<OWLClass> allClasses = new ArrayList<>(ontology.getClassesInSignature());
 
         OWLAnnotationProperty rdfsLabel = getFactory().getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI());
         OWLAnnotationProperty synonym = null;
@@ -64,84 +234,413 @@ public class ReasonedOntologyLoader extends AbstractOntologyLoader {
             synonym = getFactory().getOWLAnnotationProperty(IRI.create(getSynonymURI()));
         }
 
+        long extractionStart = System.currentTimeMillis();
+        List<ExtractedClass> extractedClasses;
+        if (isTopDownExtraction() && classData.contains(ClassData.TYPE_LABELS)) {
+            extractedClasses = extractClassesTopDown(allClasses, rdfsLabel, synonym, classData);
+        }
+        else if (getExtractionThreads() > 1 && allClasses.size() > 1) {
+            extractedClasses = extractClassesInParallel(allClasses, rdfsLabel, synonym, classData);
+        }
+        else {
+            extractedClasses = extractClasses(allClasses, rdfsLabel, synonym, classData);
+        }
+
         int labelCount = 0;
         int labelledClassCount = 0;
         int synonymCount = 0;
         int synonymedClassCount = 0;
-        for (OWLClass ontologyClass : allClasses) {
-            IRI clsIri = ontologyClass.getIRI();
-            getLog().trace("Processing " + clsIri + "...");
+        for (ExtractedClass extractedClass : extractedClasses) {
+            IRI clsIri = extractedClass.iri;
+            if (extractedClass.label != null) {
+                addClassLabel(clsIri, extractedClass.label);
+                labelledClassCount++;
+                labelCount++;
+            }
+            if (extractedClass.typeLabels != null) {
+                addClassTypes(clsIri, extractedClass.typeLabels);
+            }
+            if (extractedClass.synonyms != null) {
+                addSynonyms(clsIri, extractedClass.synonyms);
+                synonymCount += extractedClass.synonyms.size();
+                synonymedClassCount++;
+            }
+            if (extractedClass.children != null) {
+                addChildren(clsIri, extractedClass.children);
+            }
+        }
+        long elapsed = System.currentTimeMillis() - extractionStart;
+        extractionTime += elapsed;
 
-            // check if this is a subclass of obsolete class
-            if (ontologyClass.equals(obsoleteClass) ||
-                    reasoner.getSuperClasses(ontologyClass, false).getFlattened().contains(obsoleteClass)) {
+        getLog().info("Extracted " + classData + " for " + extractedClasses.size() + " classes from the " +
+                              getReasonerName() + " hierarchy in " + elapsed + "ms");
+        getLog().debug("Successfully loaded " + labelCount + " labels on " + labelledClassCount + " classes, and " +
+                               synonymCount + " synonyms on " + synonymedClassCount + " classes, " +
+                               "from " + getOntologyIRI().toString() + "!");
+    }
+
+    private List<ExtractedClass> extractClasses(List<OWLClass> classes,
+                                                OWLAnnotationProperty rdfsLabel,
+                                                OWLAnnotationProperty synonym,
+                                                Set<ClassData> classData) {
+        List<ExtractedClass> extractedClasses = new ArrayList<>(classes.size());
+        for (OWLClass ontologyClass : classes) {
+            if (obsoleteClasses.contains(ontologyClass)) {
                 getLog().trace("Class " + ontologyClass + " is obsolete, skipping");
                 continue;
             }
+            extractedClasses.add(extractClass(ontologyClass,
+                                              getParents(ontologyClass, classData),
+                                              getChildren(ontologyClass, classData),
+                                              rdfsLabel,
+                                              synonym,
+                                              classData));
+        }
+        return extractedClasses;
+    }
 
-            // get label annotations
-            getLog().trace("Collecting labels...");
-            Set<String> labels = getStringLiteralAnnotationValues(ontology, ontologyClass, rdfsLabel);
-            String label = null;
-            if (labels.isEmpty()) {
-                getLog().warn("OWLClass " + ontologyClass + " contains no label. " +
-                                      "No labels for this class will be loaded.");
-            }
-            else {
-                if (labels.size() > 1) {
-                    getLog().warn("OWLClass " + ontologyClass + " contains more than one label " +
-                                          "(including '" + labels.iterator().next() + "'). " +
-                                          "No labels for this class will be loaded.");
-                }
-                else {
-                    label = labels.iterator().next();
-                    getLog().trace("Label of '" + ontologyClass + ": " + label);
-                    addClassLabel(clsIri, label);
-                    labelledClassCount++;
-                    labelCount++;
+    private List<ExtractedClass> extractClassesInParallel(List<OWLClass> classes,
+                                                          final OWLAnnotationProperty rdfsLabel,
+                                                          final OWLAnnotationProperty synonym,
+                                                          final Set<ClassData> classData)
+            throws OWLOntologyCreationException {
+        // the OWLAPI lazily builds its annotation indexes on first access, so touch them once before sharing the
+        // ontology between threads - after this, annotation lookups are read-only
+        getStringLiteralAnnotationValues(ontology, classes.get(0), rdfsLabel);
+        if (synonym != null) {
+            getStringLiteralAnnotationValues(ontology, classes.get(0), synonym);
+        }
+
+        int threads = Math.min(getExtractionThreads(), classes.size());
+        getLog().debug("Extracting " + classes.size() + " classes using " + threads + " threads...");
+
+        // reasoners are not required to be thread-safe, so this thread reads the inferred hierarchy out of the reasoner
+        // a chunk at a time, handing each chunk to the workers for label and synonym extraction as it goes
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<ExtractedClass>>> partitions = new ArrayList<>();
+            for (int start = 0; start < classes.size(); start += EXTRACTION_CHUNK_SIZE) {
+                List<OWLClass> chunk = classes.subList(start, Math.min(start + EXTRACTION_CHUNK_SIZE, classes.size()));
+                final List<OWLClass> liveClasses = new ArrayList<>(chunk.size());
+                final List<Set<OWLClass>> parents = new ArrayList<>(chunk.size());
+                final List<Set<OWLClass>> children = new ArrayList<>(chunk.size());
+                for (OWLClass ontologyClass : chunk) {
+                    if (obsoleteClasses.contains(ontologyClass)) {
+                        getLog().trace("Class " + ontologyClass + " is obsolete, skipping");
+                        continue;
+                    }
+                    liveClasses.add(ontologyClass);
+                    parents.add(getParents(ontologyClass, classData));
+                    children.add(getChildren(ontologyClass, classData));
                 }
+                partitions.add(executor.submit(new Callable<List<ExtractedClass>>() {
+                    @Override public List<ExtractedClass> call() throws Exception {
+                        List<ExtractedClass> extractedClasses = new ArrayList<>(liveClasses.size());
+                        for (int i = 0; i < liveClasses.size(); i++) {
+                            extractedClasses.add(extractClass(liveClasses.get(i),
+                                                              parents.get(i),
+                                                              children.get(i),
+                                                              rdfsLabel,
+                                                              synonym,
+                                                              classData));
+                        }
+                        return extractedClasses;
+                    }
+                }));
+            }
+
+            // collect partitions in submission order, so results are added in the same order as the serial path
+            List<ExtractedClass> extractedClasses = new ArrayList<>(classes.size());
+            for (Future<List<ExtractedClass>> partition : partitions) {
+                extractedClasses.addAll(partition.get());
             }
+            return extractedClasses;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OWLOntologyCreationException("Interrupted whilst extracting classes from the ontology", e);
+        }
+        catch (ExecutionException e) {
+            throw new OWLOntologyCreationException("Failed to extract classes from the ontology", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns all inferred superclasses of the given class, or null if type labels were not requested
+     */
+    private Set<OWLClass> getParents(OWLClass ontologyClass, Set<ClassData> classData) {
+        if (classData.contains(ClassData.TYPE_LABELS)) {
+            return reasoner.getSuperClasses(ontologyClass, false).getFlattened();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the direct inferred subclasses of the given class, or null if children were not requested
+     */
+    private Set<OWLClass> getChildren(OWLClass ontologyClass, Set<ClassData> classData) {
+        if (classData.contains(ClassData.CHILDREN)) {
+            return reasoner.getSubClasses(ontologyClass, true).getFlattened();
+        }
+        return null;
+    }
+
+    /**
+     * Extracts the requested label, types, synonyms and children of a single, non-obsolete class, given the parents and
+     * children already read from the reasoner.  This method never touches the reasoner, so may be called concurrently
+     * from several threads, as the (already loaded) ontology is only ever read.
+     *
+     * @return the extracted class
+     */
+    private ExtractedClass extractClass(OWLClass ontologyClass,
+                                        Set<OWLClass> parents,
+                                        Set<OWLClass> children,
+                                        OWLAnnotationProperty rdfsLabel,
+                                        OWLAnnotationProperty synonym,
+                                        Set<ClassData> classData) {
+        IRI clsIri = ontologyClass.getIRI();
+        getLog().trace("Processing " + clsIri + "...");
+
+        ExtractedClass extractedClass = new ExtractedClass(clsIri);
 
-            // get types
+        // get label annotations
+        if (classData.contains(ClassData.LABELS)) {
+            getLog().trace("Collecting labels...");
+            extractedClass.label =
+                    extractLabel(ontologyClass, getStringLiteralAnnotationValues(ontology, ontologyClass, rdfsLabel));
+        }
+
+        // get types
+        if (classData.contains(ClassData.TYPE_LABELS)) {
             getLog().trace("Collecting types...");
             Set<String> ontologyTypeLabelSet = new HashSet<>();
-            Set<OWLClass> parents = reasoner.getSuperClasses(ontologyClass, false).getFlattened();
             for (OWLClass parentClass : parents) {
-                getLog().trace("Next parent of " + label + ": " + parentClass);
+                getLog().trace("Next parent of " + clsIri + ": " + parentClass);
                 Set<String> typeVals = getStringLiteralAnnotationValues(ontology, parentClass, rdfsLabel);
                 ontologyTypeLabelSet.addAll(typeVals);
             }
-            addClassTypes(clsIri, ontologyTypeLabelSet);
+            extractedClass.typeLabels = ontologyTypeLabelSet;
+        }
 
-            // get all synonym annotations
+        // get all synonym annotations
+        if (classData.contains(ClassData.SYNONYMS)) {
             getLog().trace("Collecting synonyms...");
-            if (synonym != null) {
-                Set<String> synonymVals = getStringLiteralAnnotationValues(ontology, ontologyClass, synonym);
-                if (synonymVals.isEmpty()) {
-                    getLog().trace("OWLClass " + ontologyClass + " contains no synonyms. " +
-                                           "No synonyms for this class will be loaded.");
-                }
-                else {
-                    addSynonyms(clsIri, synonymVals);
-                    synonymCount += synonymVals.size();
-                    synonymedClassCount++;
-                }
-            }
+            extractedClass.synonyms = extractSynonyms(ontologyClass, synonym);
+        }
 
-            // get all children
+        // get all children
+        if (classData.contains(ClassData.CHILDREN)) {
             getLog().trace("Collecting children...");
             Set<IRI> childIriSet = new HashSet<>();
-            Set<OWLClass> children = reasoner.getSubClasses(ontologyClass, true).getFlattened();
             for (OWLClass childClass : children) {
-                getLog().trace("Next child of " + label + ": " + childClass);
+                getLog().trace("Next child of " + clsIri + ": " + childClass);
                 childIriSet.add(childClass.getIRI());
             }
-            addChildren(clsIri, childIriSet);
+            extractedClass.children = childIriSet;
         }
 
-        getLog().debug("Successfully loaded " + labelCount + " labels on " + labelledClassCount + " classes, and " +
-                               synonymCount + " synonyms on " + synonymedClassCount + " classes, " +
-                               "from " + ontologyIRI.toString() + "!");
+        return extractedClass;
+    }
+
+    /**
+     * Extracts every class by walking the inferred hierarchy once from owl:Thing downwards.  The walk records each
+     * node (set of equivalent classes) and its direct subclasses, then visits nodes in topological order so that the
+     * type labels of every parent are complete before its children are visited.  Type labels are never copied: each
+     * node refers to the label sets of its parents, and a node with a single parent shares its parent's set outright.
+     * A node is obsolete if any of its parents is obsolete or is the obsolete class.
+     */
+    private List<ExtractedClass> extractClassesTopDown(List<OWLClass> classes,
+                                                       OWLAnnotationProperty rdfsLabel,
+                                                       OWLAnnotationProperty synonym,
+                                                       Set<ClassData> classData) {
+        getLog().debug("Walking inferred class hierarchy...");
+        Map<OWLClass, Set<String>> classLabels = new HashMap<>();
+        Map<OWLClass, HierarchyNode> hierarchyNodes = new HashMap<>();
+        HierarchyNode top = createHierarchyNode(reasoner.getTopClassNode(), rdfsLabel, classLabels, hierarchyNodes);
+
+        // breadth first walk, asking the reasoner only for direct subclasses of each node
+        Deque<HierarchyNode> walkQueue = new ArrayDeque<>();
+        walkQueue.add(top);
+        int nodeCount = 0;
+        while (!walkQueue.isEmpty()) {
+            HierarchyNode node = walkQueue.poll();
+            nodeCount++;
+            NodeSet<OWLClass> subclassNodes = reasoner.getSubClasses(node.classes.iterator().next(), true);
+            for (OWLClass childClass : subclassNodes.getFlattened()) {
+                node.childIris.add(childClass.getIRI());
+            }
+            for (Node<OWLClass> subclassNode : subclassNodes) {
+                if (subclassNode.isBottomNode()) {
+                    continue;
+                }
+                HierarchyNode child = hierarchyNodes.get(subclassNode.getRepresentativeElement());
+                if (child == null) {
+                    child = createHierarchyNode(subclassNode, rdfsLabel, classLabels, hierarchyNodes);
+                    walkQueue.add(child);
+                }
+                child.parents.add(node);
+                node.children.add(child);
+            }
+        }
+        getLog().debug("Walked " + classLabels.size() + " classes in " + nodeCount + " hierarchy nodes");
+
+        // visit in topological order, so each node's parents are resolved first
+        Map<HierarchyNode, Integer> unresolvedParents = new HashMap<>();
+        Deque<HierarchyNode> resolveQueue = new ArrayDeque<>();
+        resolveQueue.add(top);
+        while (!resolveQueue.isEmpty()) {
+            HierarchyNode node = resolveQueue.poll();
+            resolveTypeLabels(node);
+            for (HierarchyNode child : node.children) {
+                Integer remaining = unresolvedParents.get(child);
+                int unresolved = (remaining == null ? child.parents.size() : remaining) - 1;
+                if (unresolved == 0) {
+                    unresolvedParents.remove(child);
+                    resolveQueue.add(child);
+                }
+                else {
+                    unresolvedParents.put(child, unresolved);
+                }
+            }
+        }
+
+        // now assemble each class in signature order
+        List<ExtractedClass> extractedClasses = new ArrayList<>(classes.size());
+        for (OWLClass ontologyClass : classes) {
+            HierarchyNode node = hierarchyNodes.get(ontologyClass);
+            if (node == null) {
+                // not reachable from owl:Thing (e.g. owl:Nothing), so fall back to querying the reasoner directly
+                extractedClasses.addAll(
+                        extractClasses(Collections.singletonList(ontologyClass), rdfsLabel, synonym, classData));
+                continue;
+            }
+
+            if (node.obsolete || ontologyClass.equals(obsoleteClass)) {
+                getLog().trace("Class " + ontologyClass + " is obsolete, skipping");
+                continue;
+            }
+
+            ExtractedClass extractedClass = new ExtractedClass(ontologyClass.getIRI());
+            if (classData.contains(ClassData.LABELS)) {
+                extractedClass.label = extractLabel(ontologyClass, classLabels.get(ontologyClass));
+            }
+            extractedClass.typeLabels = node.typeLabels;
+            if (classData.contains(ClassData.SYNONYMS)) {
+                extractedClass.synonyms = extractSynonyms(ontologyClass, synonym);
+            }
+            if (classData.contains(ClassData.CHILDREN)) {
+                extractedClass.children = new HashSet<>(node.childIris);
+            }
+            extractedClasses.add(extractedClass);
+        }
+        return extractedClasses;
+    }
+
+    private HierarchyNode createHierarchyNode(Node<OWLClass> reasonerNode,
+                                              OWLAnnotationProperty rdfsLabel,
+                                              Map<OWLClass, Set<String>> classLabels,
+                                              Map<OWLClass, HierarchyNode> hierarchyNodes) {
+        HierarchyNode node = new HierarchyNode(reasonerNode.getEntities());
+        for (OWLClass ontologyClass : node.classes) {
+            Set<String> labels = getStringLiteralAnnotationValues(ontology, ontologyClass, rdfsLabel);
+            classLabels.put(ontologyClass, labels);
+            node.labels.addAll(labels);
+            hierarchyNodes.put(ontologyClass, node);
+        }
+        return node;
+    }
+
+    private void resolveTypeLabels(HierarchyNode node) {
+        if (node.parents.isEmpty()) {
+            node.typeLabels = SharedLabelSet.EMPTY;
+        }
+        else if (node.parents.size() == 1) {
+            HierarchyNode parent = node.parents.get(0);
+            node.typeLabels = parent.inheritedLabels;
+            node.obsolete = parent.obsolete || parent.classes.contains(obsoleteClass);
+        }
+        else {
+            List<SharedLabelSet> parentLabels = new ArrayList<>(node.parents.size());
+            for (HierarchyNode parent : node.parents) {
+                parentLabels.add(parent.inheritedLabels);
+                node.obsolete = node.obsolete || parent.obsolete || parent.classes.contains(obsoleteClass);
+            }
+            node.typeLabels = new SharedLabelSet(Collections.<String>emptySet(), parentLabels);
+        }
+
+        // the labels this node passes down to its children - shared with its own type labels where possible
+        if (node.labels.isEmpty()) {
+            node.inheritedLabels = node.typeLabels;
+        }
+        else {
+            node.inheritedLabels = new SharedLabelSet(node.labels, Collections.singleton(node.typeLabels));
+        }
+    }
+
+    private String extractLabel(OWLClass ontologyClass, Set<String> labels) {
+        if (labels.isEmpty()) {
+            getLog().warn("OWLClass " + ontologyClass + " contains no label. " +
+                                  "No labels for this class will be loaded.");
+            return null;
+        }
+        else {
+            if (labels.size() > 1) {
+                getLog().warn("OWLClass " + ontologyClass + " contains more than one label " +
+                                      "(including '" + labels.iterator().next() + "'). " +
+                                      "No labels for this class will be loaded.");
+                return null;
+            }
+            else {
+                String label = labels.iterator().next();
+                getLog().trace("Label of '" + ontologyClass + ": " + label);
+                return label;
+            }
+        }
+    }
+
+    private Set<String> extractSynonyms(OWLClass ontologyClass, OWLAnnotationProperty synonym) {
+        if (synonym != null) {
+            Set<String> synonymVals = getStringLiteralAnnotationValues(ontology, ontologyClass, synonym);
+            if (synonymVals.isEmpty()) {
+                getLog().trace("OWLClass " + ontologyClass + " contains no synonyms. " +
+                                       "No synonyms for this class will be loaded.");
+                return null;
+            }
+            else {
+                return synonymVals;
+            }
+        }
+        return null;
+    }
+
+    private static class HierarchyNode {
+        private final Set<OWLClass> classes;
+        private final Set<String> labels = new HashSet<>();
+        private final List<HierarchyNode> parents = new ArrayList<>();
+        private final List<HierarchyNode> children = new ArrayList<>();
+        private final Set<IRI> childIris = new HashSet<>();
+        private SharedLabelSet typeLabels;
+        private SharedLabelSet inheritedLabels;
+        private boolean obsolete;
+
+        private HierarchyNode(Set<OWLClass> classes) {
+            this.classes = classes;
+        }
+    }
+
+    private static class ExtractedClass {
+        private final IRI iri;
+        private String label;
+        private Set<String> typeLabels;
+        private Set<String> synonyms;
+        private Set<IRI> children;
+
+        private ExtractedClass(IRI iri) {
+            this.iri = iri;
+        }
     }
 
     private class LoggingReasonerProgressMonitor implements ReasonerProgressMonitor {
@@ -0,0 +1,100 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import org.semanticweb.HermiT.Reasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Locates {@link OWLReasonerFactory} implementations by name, so that the reasoner used to classify an ontology can be
+ * chosen at runtime.  HermiT ("hermit") and the OWLAPI structural reasoner ("structural") are always available.  Any
+ * further reasoner factories registered on the classpath as a {@link ServiceLoader} provider of {@link
+ * OWLReasonerFactory} are available under their reasoner name, and any other factory can be named by its fully
+ * qualified class name, as long as it has a public no-arg constructor.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class ReasonerFactoryLocator {
+    public static final String HERMIT = "hermit";
+    public static final String STRUCTURAL = "structural";
+
+    private static Logger log = LoggerFactory.getLogger(ReasonerFactoryLocator.class);
+
+    /**
+     * Returns all reasoner factories that can be located, indexed by the (lower case) name they can be located by.
+     *
+     * @return the available reasoner factories
+     */
+    public static Map<String, OWLReasonerFactory> getAvailableReasonerFactories() {
+        Map<String, OWLReasonerFactory> factories = new LinkedHashMap<>();
+        factories.put(HERMIT, new Reasoner.ReasonerFactory());
+        factories.put(STRUCTURAL, new StructuralReasonerFactory());
+        try {
+            for (OWLReasonerFactory factory : ServiceLoader.load(OWLReasonerFactory.class)) {
+                String name = getReasonerName(factory).toLowerCase();
+                if (!factories.containsKey(name)) {
+                    log.debug("Found reasoner factory '" + name + "' on the classpath");
+                    factories.put(name, factory);
+                }
+            }
+        }
+        catch (ServiceConfigurationError e) {
+            log.warn("Unable to load reasoner factories from the classpath: " + e.getMessage());
+        }
+        return factories;
+    }
+
+    /**
+     * Returns the name of the given reasoner factory.  Factories may not know their own name (HermiT's is read from its
+     * jar manifest, so is null in some builds), in which case the simple name of the factory class is used.
+     *
+     * @param factory the reasoner factory to name
+     * @return the reasoner name, never null
+     */
+    public static String getReasonerName(OWLReasonerFactory factory) {
+        String name = factory.getReasonerName();
+        return name != null && !name.isEmpty() ? name : factory.getClass().getSimpleName();
+    }
+
+    /**
+     * Locates the reasoner factory with the given name.  Names are matched, ignoring case, against the built in
+     * reasoners and the names of reasoner factories registered on the classpath, and failing that are treated as the
+     * class name of a reasoner factory.
+     *
+     * @param reasonerName the name of the reasoner to locate
+     * @return the reasoner factory with this name
+     * @throws IllegalArgumentException if no reasoner factory with this name can be found
+     */
+    public static OWLReasonerFactory locate(String reasonerName) {
+        Map<String, OWLReasonerFactory> factories = getAvailableReasonerFactories();
+        OWLReasonerFactory factory = factories.get(reasonerName.toLowerCase());
+        if (factory != null) {
+            return factory;
+        }
+
+        try {
+            Class<?> factoryClass = Class.forName(reasonerName);
+            if (OWLReasonerFactory.class.isAssignableFrom(factoryClass)) {
+                return (OWLReasonerFactory) factoryClass.getConstructor().newInstance();
+            }
+            else {
+                throw new IllegalArgumentException(reasonerName + " is not an implementation of " +
+                                                           OWLReasonerFactory.class.getName());
+            }
+        }
+        catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("No reasoner named '" + reasonerName + "' could be found " +
+                                                       "(available reasoners: " + factories.keySet() + ")");
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Unable to create reasoner factory " + reasonerName, e);
+        }
+    }
+}
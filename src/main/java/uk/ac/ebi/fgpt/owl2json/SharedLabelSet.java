@@ -0,0 +1,155 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable set of labels that is composed of a set of labels of its own, plus the contents of any number of other
+ * (shared) label sets.  This is used to represent the type labels of classes in a hierarchy: the type labels of a
+ * class are the labels of its parents plus the type labels of those parents, so rather than copying every ancestor
+ * label into a new set for each class, each class simply refers to the sets of its parents.
+ * <p/>
+ * The contents of this set are never materialized: iteration walks the shared sets lazily, and only the size is cached
+ * once counted, so memory use is proportional to the number of distinct hierarchy nodes rather than to the number of
+ * classes multiplied by their depth.
+ * <p/>
+ * Only the top down extraction of {@link ReasonedOntologyLoader} produces shared sets.  The other extraction paths, and
+ * snapshots, hold each distinct type label set in full (pooling identical sets), and a restored snapshot is flattened.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class SharedLabelSet extends AbstractSet<String> {
+    public static final SharedLabelSet EMPTY =
+            new SharedLabelSet(Collections.<String>emptySet(), Collections.<SharedLabelSet>emptySet());
+
+    private final Set<String> labels;
+    private final SharedLabelSet[] tails;
+    private volatile int size = -1;
+
+    /**
+     * Creates a new set containing the given labels, plus the contents of each of the given tails
+     *
+     * @param labels the labels this set contains directly
+     * @param tails  the shared sets whose contents are also contained in this set
+     */
+    public SharedLabelSet(Set<String> labels, Collection<SharedLabelSet> tails) {
+        this.labels = labels;
+        this.tails = tails.toArray(new SharedLabelSet[tails.size()]);
+    }
+
+    @Override public boolean contains(Object o) {
+        // most classes have a single parent, so follow chains of single tails without allocating, and only track
+        // visited sets once the hierarchy branches
+        SharedLabelSet next = this;
+        while (next.tails.length <= 1) {
+            if (next.labels.contains(o)) {
+                return true;
+            }
+            if (next.tails.length == 0) {
+                return false;
+            }
+            next = next.tails[0];
+        }
+
+        Map<SharedLabelSet, Boolean> visited = new IdentityHashMap<>();
+        Deque<SharedLabelSet> stack = new ArrayDeque<>();
+        stack.push(next);
+        while (!stack.isEmpty()) {
+            next = stack.pop();
+            if (visited.put(next, Boolean.TRUE) == null) {
+                if (next.labels.contains(o)) {
+                    return true;
+                }
+                for (SharedLabelSet tail : next.tails) {
+                    stack.push(tail);
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override public Iterator<String> iterator() {
+        return new LabelIterator();
+    }
+
+    @Override public int size() {
+        // the contents never change, so count them once; racing threads will simply count the same value
+        if (size < 0) {
+            int count = 0;
+            for (Iterator<String> it = iterator(); it.hasNext(); it.next()) {
+                count++;
+            }
+            size = count;
+        }
+        return size;
+    }
+
+    /**
+     * Walks the labels of this set and its tails lazily, depth first, skipping tails that have already been walked and
+     * labels that have already been returned
+     */
+    private class LabelIterator implements Iterator<String> {
+        private final Map<SharedLabelSet, Boolean> visited = new IdentityHashMap<>();
+        private final Deque<SharedLabelSet> stack = new ArrayDeque<>();
+        private final Set<String> returned = new HashSet<>();
+        private Iterator<String> current = Collections.<String>emptySet().iterator();
+        private String next;
+
+        private LabelIterator() {
+            stack.push(SharedLabelSet.this);
+            next = advance();
+        }
+
+        @Override public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override public String next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = advance();
+            return result;
+        }
+
+        @Override public void remove() {
+            throw new UnsupportedOperationException("SharedLabelSets are immutable");
+        }
+
+        private String advance() {
+            while (true) {
+                while (current.hasNext()) {
+                    String label = current.next();
+                    if (returned.add(label)) {
+                        return label;
+                    }
+                }
+                if (stack.isEmpty()) {
+                    return null;
+                }
+                SharedLabelSet set = stack.pop();
+                if (visited.put(set, Boolean.TRUE) == null) {
+                    current = set.labels.iterator();
+                    for (SharedLabelSet tail : set.tails) {
+                        stack.push(tail);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@ public class SimpleOntologyHierarchyNode implements OntologyHierarchyNode {
     private final String name;
     private final Collection<OntologyHierarchyNode> children;
     private int size;
+    private int[] sizes;
 
     public SimpleOntologyHierarchyNode() {
         this("");
@@ -55,4 +56,12 @@ public class SimpleOntologyHierarchyNode implements OntologyHierarchyNode {
     @Override public void setSize(int size) {
         this.size = size;
     }
+
+    @Override public int[] getSizes() {
+        return sizes;
+    }
+
+    @Override public void setSizes(int[] sizes) {
+        this.sizes = sizes;
+    }
 }
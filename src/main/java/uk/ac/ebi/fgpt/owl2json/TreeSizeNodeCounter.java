@@ -6,11 +6,13 @@ package uk.ac.ebi.fgpt.owl2json;
  * node will be the sum total of each of it's direct child nodes.  For example, if a term has 3 children, each of which
  * are leaf nodes, the size of that term will be 3.  If THAT term itself has a single parent and that parent had no
  * other children, it's size would also be 3.
+ * <p/>
+ * Whole hierarchies can be counted in a single loop using {@link #countAll(PostOrderedHierarchy, int[])}.
  *
  * @author Tony Burdett
  * @date 18/08/14
  */
-public class TreeSizeNodeCounter implements OntologyHierarchyNodeCounter {
+public class TreeSizeNodeCounter implements OntologyHierarchyNodeCounter, OntologyHierarchyBulkCounter {
     @Override public int count(OntologyHierarchyNode node) {
         if (node.getChildren().isEmpty()) {
             return 1;
@@ -23,4 +25,23 @@ public class TreeSizeNodeCounter implements OntologyHierarchyNodeCounter {
             return totalChildSize;
         }
     }
+
+    @Override public void countAll(PostOrderedHierarchy hierarchy, int[] sizes) {
+        int[] childOffsets = hierarchy.getChildOffsets();
+        int[] childIds = hierarchy.getChildIds();
+        for (int id = 0; id < hierarchy.size(); id++) {
+            int start = childOffsets[id];
+            int end = childOffsets[id + 1];
+            if (start == end) {
+                sizes[id] = 1;
+            }
+            else {
+                int totalChildSize = 0;
+                for (int i = start; i < end; i++) {
+                    totalChildSize += sizes[childIds[i]];
+                }
+                sizes[id] = totalChildSize;
+            }
+        }
+    }
 }
@@ -0,0 +1,271 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A persistent, on-disk cache of ZOOMA query responses, so that term counts don't have to be fetched from ZOOMA every
+ * time a {@link ZoomaNodeCounter} is created.  Responses are cached per query (and so per datasource), and are used
+ * without contacting ZOOMA until they are older than the cache's time-to-live.  After that, they are revalidated with
+ * a conditional request (using the ETag and Last-Modified date ZOOMA returned), so an unchanged response is not
+ * downloaded again.  If ZOOMA can't be reached, a stale response is used rather than failing.  Each response is kept in
+ * a single file, behind a header recording when it was fetched and how to revalidate it, so that a response and its
+ * header are always replaced together; an entry that can't be read is simply fetched again.
+ * <p/>
+ * In offline mode, ZOOMA is never contacted: cached responses are used whatever their age, and queries with no cached
+ * response fail.
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class ZoomaCountCache {
+    private static final int MAGIC = 0x5A4F4F31;
+
+    private final File cacheDirectory;
+    private final long timeToLive;
+    private final boolean offline;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    protected Logger getLog() {
+        return log;
+    }
+
+    /**
+     * Creates a cache in the given directory
+     *
+     * @param cacheDirectory the directory to keep cached responses in, created if it doesn't exist
+     * @param timeToLive     how long, in milliseconds, a cached response is used before it is revalidated
+     * @param offline        true if ZOOMA should never be contacted
+     */
+    public ZoomaCountCache(File cacheDirectory, long timeToLive, boolean offline) {
+        this.cacheDirectory = cacheDirectory;
+        this.timeToLive = timeToLive;
+        this.offline = offline;
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * Opens the response to the given ZOOMA query, from the cache if a usable response is cached, or otherwise from
+     * ZOOMA, caching the new response.
+     *
+     * @param zoomaQuery the query to get the response to
+     * @return a stream of the response, which the caller must close
+     * @throws IOException if there is no usable cached response and ZOOMA could not be queried
+     */
+    public InputStream open(URL zoomaQuery) throws IOException {
+        File entryFile = new File(cacheDirectory, "zooma-" + generateKey(zoomaQuery) + ".cache");
+
+        CacheEntry entry = readEntry(entryFile);
+        if (offline) {
+            if (entry == null) {
+                throw new IOException("No cached ZOOMA response for " + zoomaQuery + " is available offline");
+            }
+            getLog().debug("Using cached ZOOMA response for " + zoomaQuery + " (offline)");
+            return entry.openBody();
+        }
+
+        long age = entry != null ? System.currentTimeMillis() - entry.fetched : -1;
+        if (entry != null && age < timeToLive) {
+            getLog().debug("Using cached ZOOMA response for " + zoomaQuery + " (" + age / 1000 + "s old)");
+            return entry.openBody();
+        }
+
+        try {
+            if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+                throw new IOException("Failed to create ZOOMA cache directory '" + cacheDirectory + "'");
+            }
+            entry = fetch(zoomaQuery, entry, entryFile);
+        }
+        catch (IOException e) {
+            if (entry != null) {
+                getLog().warn("Failed to revalidate cached ZOOMA response for " + zoomaQuery + " (" +
+                                      e.getMessage() + "); using the cached response, " + age / 1000 + "s old");
+            }
+            else {
+                throw e;
+            }
+        }
+        return entry.openBody();
+    }
+
+    private CacheEntry fetch(URL zoomaQuery, CacheEntry cached, File entryFile) throws IOException {
+        URLConnection connection = zoomaQuery.openConnection();
+        if (cached != null) {
+            if (cached.etag != null) {
+                connection.setRequestProperty("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+        }
+
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+            int status = httpConnection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                getLog().debug("Cached ZOOMA response for " + zoomaQuery + " is still valid");
+                httpConnection.disconnect();
+                try (InputStream body = cached.openBody()) {
+                    return writeEntry(entryFile, zoomaQuery, cached.etag, cached.lastModified, body);
+                }
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                httpConnection.disconnect();
+                throw new IOException("ZOOMA responded with " + status + " to " + zoomaQuery);
+            }
+        }
+
+        getLog().debug("Fetching ZOOMA response for " + zoomaQuery);
+        try (InputStream body = connection.getInputStream()) {
+            return writeEntry(entryFile,
+                              zoomaQuery,
+                              connection.getHeaderField("ETag"),
+                              connection.getHeaderField("Last-Modified"),
+                              body);
+        }
+    }
+
+    /**
+     * Reads the header of a cached response.  A missing entry, or one that can't be read (for example, because it is
+     * corrupt or was written by an older version), is treated as not cached, so the response is simply fetched again.
+     */
+    private CacheEntry readEntry(File entryFile) {
+        if (!entryFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a ZOOMA cache entry");
+            }
+            int headerLength = in.readInt();
+            in.readUTF(); // the query, kept only to make entries identifiable
+            long fetched = in.readLong();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            return new CacheEntry(entryFile,
+                                  8 + headerLength,
+                                  fetched,
+                                  etag.isEmpty() ? null : etag,
+                                  lastModified.isEmpty() ? null : lastModified);
+        }
+        catch (IOException e) {
+            getLog().warn("Ignoring unreadable cached ZOOMA response '" + entryFile + "' (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Writes a cache entry, made up of a header (the query, the time it was fetched, and the ETag and Last-Modified
+     * date to revalidate it with) followed by the response body.  Both are written to a temporary file that then
+     * replaces the entry, so a response and its header are always replaced together.
+     */
+    private CacheEntry writeEntry(File entryFile, URL zoomaQuery, String etag, String lastModified, InputStream body)
+            throws IOException {
+        long fetched = System.currentTimeMillis();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(header)) {
+            out.writeUTF(zoomaQuery.toString());
+            out.writeLong(fetched);
+            out.writeUTF(etag != null ? etag : "");
+            out.writeUTF(lastModified != null ? lastModified : "");
+        }
+
+        Path tempFile = Files.createTempFile(cacheDirectory.toPath(), entryFile.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile.toFile()))) {
+                out.writeInt(MAGIC);
+                out.writeInt(header.size());
+                header.writeTo(out);
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            Files.move(tempFile,
+                       entryFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return new CacheEntry(entryFile, 8 + header.size(), fetched, etag, lastModified);
+    }
+
+    private static String generateKey(URL zoomaQuery) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest(zoomaQuery.toString().getBytes(StandardCharsets.UTF_8))) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * The header of a cached response, and where in the entry file its body starts
+     */
+    private static class CacheEntry {
+        private final File entryFile;
+        private final long bodyOffset;
+        private final long fetched;
+        private final String etag;
+        private final String lastModified;
+
+        private CacheEntry(File entryFile, long bodyOffset, long fetched, String etag, String lastModified) {
+            this.entryFile = entryFile;
+            this.bodyOffset = bodyOffset;
+            this.fetched = fetched;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        private InputStream openBody() throws IOException {
+            FileInputStream in = new FileInputStream(entryFile);
+            try {
+                in.getChannel().position(bodyOffset);
+                return in;
+            }
+            catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+    }
+}
@@ -1,17 +1,17 @@
 package uk.ac.ebi.fgpt.owl2json;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * An {@link uk.ac.ebi.fgpt.owl2json.OntologyHierarchyNodeCounter} that performs a ZOOMA lookup to obtain the counts of
@@ -21,15 +21,22 @@ import java.util.Map;
  * @author Tony Burdett
  * @date 18/08/14
  */
-public class ZoomaNodeCounter implements OntologyHierarchyNodeCounter {
+public class ZoomaNodeCounter implements OntologyHierarchyNodeCounter, OntologyHierarchyBulkCounter {
     private static final URI defaultDatasource = URI.create("http://www.genome.gov/gwastudies");
 
+    private static final URI defaultZoomaLocation = URI.create("http://www.ebi.ac.uk/fgpt/zooma");
+
     private static final String queryPrefix =
-            "http://www.ebi.ac.uk/fgpt/zooma/v2/api/query?query=PREFIX%20rdf%3A%20%3Chttp%3A%2F%2Fwww.w3.org%2F1999%2F02%2F22-rdf-syntax-ns%23%3E%0D%0APREFIX%20rdfs%3A%20%3Chttp%3A%2F%2Fwww.w3.org%2F2000%2F01%2Frdf-schema%23%3E%0D%0APREFIX%20owl%3A%20%3Chttp%3A%2F%2Fwww.w3.org%2F2002%2F07%2Fowl%23%3E%0D%0APREFIX%20dc%3A%20%3Chttp%3A%2F%2Fpurl.org%2Fdc%2Felements%2F1.1%2F%3E%0D%0APREFIX%20obo%3A%20%3Chttp%3A%2F%2Fpurl.obolibrary.org%2Fobo%2F%3E%0D%0APREFIX%20efo%3A%20%3Chttp%3A%2F%2Fwww.ebi.ac.uk%2Fefo%2F%3E%0D%0APREFIX%20zoomaresource%3A%20%3Chttp%3A%2F%2Frdf.ebi.ac.uk%2Fresource%2Fzooma%2F%3E%0D%0APREFIX%20zoomaterms%3A%20%3Chttp%3A%2F%2Frdf.ebi.ac.uk%2Fterms%2Fzooma%2F%3E%0D%0APREFIX%20oac%3A%20%3Chttp%3A%2F%2Fwww.openannotation.org%2Fns%2F%3E%0D%0A%0D%0ASELECT%20%3Fsemantictag%20(count(DISTINCT%20%3Fannotationid)%20as%20%3Fdatapoints)%20WHERE%20%7B%0D%0A%20%20%3Fannotationid%20rdf%3Atype%20oac%3ADataAnnotation%20%3B%0D%0A%20%20%20%20%20%20%20%20%20%20%20%20%20%20%20%20oac%3AhasBody%20%3Fsemantictag%20.%20%0D%0A%20%20%3Fsemantictag%20rdf%3Atype%20oac%3ASemanticTag%20.%20%0D%0A%20%20%3Fannotationid%20dc%3Asource%20%3Fsource%20.%0D%0A%20%20FILTER%20(%3Fsource%20%3D%20%3C";
+            "/v2/api/query?query=PREFIX%20rdf%3A%20%3Chttp%3A%2F%2Fwww.w3.org%2F1999%2F02%2F22-rdf-syntax-ns%23%3E%0D%0APREFIX%20rdfs%3A%20%3Chttp%3A%2F%2Fwww.w3.org%2F2000%2F01%2Frdf-schema%23%3E%0D%0APREFIX%20owl%3A%20%3Chttp%3A%2F%2Fwww.w3.org%2F2002%2F07%2Fowl%23%3E%0D%0APREFIX%20dc%3A%20%3Chttp%3A%2F%2Fpurl.org%2Fdc%2Felements%2F1.1%2F%3E%0D%0APREFIX%20obo%3A%20%3Chttp%3A%2F%2Fpurl.obolibrary.org%2Fobo%2F%3E%0D%0APREFIX%20efo%3A%20%3Chttp%3A%2F%2Fwww.ebi.ac.uk%2Fefo%2F%3E%0D%0APREFIX%20zoomaresource%3A%20%3Chttp%3A%2F%2Frdf.ebi.ac.uk%2Fresource%2Fzooma%2F%3E%0D%0APREFIX%20zoomaterms%3A%20%3Chttp%3A%2F%2Frdf.ebi.ac.uk%2Fterms%2Fzooma%2F%3E%0D%0APREFIX%20oac%3A%20%3Chttp%3A%2F%2Fwww.openannotation.org%2Fns%2F%3E%0D%0A%0D%0ASELECT%20%3Fsemantictag%20(count(DISTINCT%20%3Fannotationid)%20as%20%3Fdatapoints)%20WHERE%20%7B%0D%0A%20%20%3Fannotationid%20rdf%3Atype%20oac%3ADataAnnotation%20%3B%0D%0A%20%20%20%20%20%20%20%20%20%20%20%20%20%20%20%20oac%3AhasBody%20%3Fsemantictag%20.%20%0D%0A%20%20%3Fsemantictag%20rdf%3Atype%20oac%3ASemanticTag%20.%20%0D%0A%20%20%3Fannotationid%20dc%3Asource%20%3Fsource%20.%0D%0A%20%20FILTER%20(%3Fsource%20%3D%20%3C";
     private static final String querySuffix =
             "%3E)%20.%0D%0A%7D%0D%0AGROUP%20BY%20%3Fsemantictag%0D%0AORDER%20BY%20DESC(%3Fdatapoints)%0D%0A&format=JSON&inference=false";
 
-    private final Map<URI, Integer> zoomaCounts;
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    // counts by the string form of each term URI, which java.net.URI caches, so lookups neither box nor allocate
+    private final ObjectIntHashMap<String> zoomaCounts;
+
+    private final ZoomaCountCache cache;
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -37,36 +44,77 @@ public class ZoomaNodeCounter implements OntologyHierarchyNodeCounter {
         return log;
     }
 
+    public static URI getDefaultZoomaLocation() {
+        return defaultZoomaLocation;
+    }
+
     public ZoomaNodeCounter() {
         this(defaultDatasource);
     }
 
     public ZoomaNodeCounter(URI zoomaDatasource) {
-        zoomaCounts = new HashMap<>();
+        this(zoomaDatasource, null);
+    }
+
+    public ZoomaNodeCounter(ZoomaCountCache cache) {
+        this(defaultDatasource, cache);
+    }
+
+    /**
+     * Creates a counter for the given datasource, using the given cache (which may be null) to avoid querying ZOOMA
+     * every time
+     *
+     * @param zoomaDatasource the datasource to count data annotations from
+     * @param cache           the cache of ZOOMA responses to use, or null to always query ZOOMA
+     */
+    public ZoomaNodeCounter(URI zoomaDatasource, ZoomaCountCache cache) {
+        this(defaultZoomaLocation, zoomaDatasource, cache);
+    }
+
+    /**
+     * Creates a counter for the given datasource, querying the ZOOMA instance at the given location and using the
+     * given cache (which may be null) to avoid querying ZOOMA every time
+     *
+     * @param zoomaLocation   the base URI of the ZOOMA instance to query, e.g. http://www.ebi.ac.uk/fgpt/zooma
+     * @param zoomaDatasource the datasource to count data annotations from
+     * @param cache           the cache of ZOOMA responses to use, or null to always query ZOOMA
+     */
+    public ZoomaNodeCounter(URI zoomaLocation, URI zoomaDatasource, ZoomaCountCache cache) {
+        zoomaCounts = new ObjectIntHashMap<>(1024);
+        this.cache = cache;
 
         // setup params
         try {
             getLog().debug("Utilizing ZOOMA datasource '" + zoomaDatasource + "'");
             String escapedDatasource = URLEncoder.encode(zoomaDatasource.toString(), "UTF-8");
-            doZoomaCountsLookup(URI.create(queryPrefix + escapedDatasource + querySuffix).toURL());
+            String location = zoomaLocation.toString();
+            if (location.endsWith("/")) {
+                location = location.substring(0, location.length() - 1);
+            }
+            doZoomaCountsLookup(URI.create(location + queryPrefix + escapedDatasource + querySuffix).toURL());
         }
         catch (UnsupportedEncodingException e) {
             throw new IllegalArgumentException(
-                    "Cannot escape '" + defaultDatasource.toString() + ": " + e.getMessage(), e);
+                    "Cannot escape '" + zoomaDatasource.toString() + ": " + e.getMessage(), e);
         }
         catch (IOException e) {
             throw new RuntimeException("Unable to create a ZoomaNodeCounter - communication with ZOOMA failed", e);
         }
     }
 
+    /**
+     * Returns the number of data annotations to the term the given node represents, excluding any annotations to
+     * terms beneath it
+     *
+     * @param node the node to get the count for
+     * @return the number of data annotations to this term
+     */
+    public int getDirectCount(OntologyHierarchyNode node) {
+        return node.getURI() != null ? zoomaCounts.get(node.getURI().toString(), 0) : 0;
+    }
+
     @Override public int count(OntologyHierarchyNode node) {
-        int size;
-        if (zoomaCounts.containsKey(node.getURI())) {
-            size = zoomaCounts.get(node.getURI());
-        }
-        else {
-            size = 0;
-        }
+        int size = getDirectCount(node);
 
         // total this and all child terms
         int totalChildSize = 0;
@@ -77,24 +125,94 @@ public class ZoomaNodeCounter implements OntologyHierarchyNodeCounter {
 
     }
 
+    @Override public void countAll(PostOrderedHierarchy hierarchy, int[] sizes) {
+        int[] childOffsets = hierarchy.getChildOffsets();
+        int[] childIds = hierarchy.getChildIds();
+        for (int id = 0; id < hierarchy.size(); id++) {
+            String uri = hierarchy.getURI(id);
+            int size = uri != null ? zoomaCounts.get(uri, 0) : 0;
+
+            // total this and all child terms
+            for (int i = childOffsets[id]; i < childOffsets[id + 1]; i++) {
+                size += sizes[childIds[i]];
+            }
+            sizes[id] = size;
+        }
+    }
+
     private void doZoomaCountsLookup(URL zoomaQuery) throws IOException {
-        // despatch query and parse response using jackson
+        // despatch query and stream the response, so the result is never held in memory as a whole
         getLog().debug("Despatching ZOOMA query: " + zoomaQuery);
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode dataNode = mapper.readTree(zoomaQuery);
-        getLog().trace("ZOOMA response: " + dataNode.toString());
-
-        // results.binding[] -> each uri/count mapping
-        JsonNode bindingsNode = dataNode.get("results").get("bindings");
-        int datapointsCount = 0;
-        for (JsonNode bindingNode : bindingsNode) {
-            URI nodeURI = URI.create(bindingNode.get("semantictag").get("value").asText());
-            Integer count = bindingNode.get("datapoints").get("value").asInt();
-            datapointsCount += count;
-            zoomaCounts.put(nodeURI, count);
-            getLog().trace("Got next result: " + nodeURI.toString() + " -> " + count);
+        try (InputStream in = cache != null ? cache.open(zoomaQuery) : zoomaQuery.openStream();
+             JsonParser parser = jsonFactory.createParser(in)) {
+            readZoomaCounts(parser);
+        }
+    }
+
+    /**
+     * Reads a SPARQL JSON result from the given parser, recording the datapoints count of each semantic tag.  Only the
+     * results.bindings[].semantictag.value and results.bindings[].datapoints.value fields are read; everything else is
+     * skipped.
+     */
+    void readZoomaCounts(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Unexpected ZOOMA response: expected an object, got " + parser.getCurrentToken());
+        }
+        long datapointsCount = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (!"results".equals(field) || parser.getCurrentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String resultsField = parser.getCurrentName();
+                parser.nextToken();
+                if (!"bindings".equals(resultsField) || parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                // results.binding[] -> each uri/count mapping
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    datapointsCount += readBinding(parser);
+                }
+            }
         }
-        getLog().debug("Fetched " + datapointsCount + " datapoints for " + zoomaCounts.keySet().size() + " terms " +
+        getLog().debug("Fetched " + datapointsCount + " datapoints for " + zoomaCounts.size() + " terms " +
                                "from ZOOMA");
     }
+
+    private int readBinding(JsonParser parser) throws IOException {
+        String semanticTag = null;
+        int count = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String variable = parser.getCurrentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("value".equals(field) && "semantictag".equals(variable)) {
+                    semanticTag = parser.getText();
+                }
+                else if ("value".equals(field) && "datapoints".equals(variable)) {
+                    count = parser.getValueAsInt();
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (semanticTag == null) {
+            return 0;
+        }
+        zoomaCounts.put(semanticTag, count);
+        if (getLog().isTraceEnabled()) {
+            getLog().trace("Got next result: " + semanticTag + " -> " + count);
+        }
+        return count;
+    }
 }
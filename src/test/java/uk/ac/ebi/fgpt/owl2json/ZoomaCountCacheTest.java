@@ -0,0 +1,179 @@
+package uk.ac.ebi.fgpt.owl2json;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link ZoomaCountCache} against a local stand-in for ZOOMA, which answers every query with its current response
+ * and ETag, or with a 304 if the request carries a matching If-None-Match header
+ *
+ * @author Tony Burdett
+ * @date 16/10/26
+ */
+public class ZoomaCountCacheTest {
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private URL query;
+
+    private volatile String response;
+    private volatile String etag;
+    private volatile int requests;
+    private volatile String lastIfNoneMatch;
+
+    @Before
+    public void startServer() throws IOException {
+        response = "first";
+        etag = "\"1\"";
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/zooma", new HttpHandler() {
+            @Override public void handle(HttpExchange exchange) throws IOException {
+                requests++;
+                lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                if (etag.equals(lastIfNoneMatch)) {
+                    exchange.sendResponseHeaders(304, -1);
+                }
+                else {
+                    byte[] body = response.getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        query = new URL("http://localhost:" + server.getAddress().getPort() + "/zooma/v2/api/query?q=counts");
+    }
+
+    @After
+    public void stopServer() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testFreshResponseIsNotRevalidated() throws IOException {
+        ZoomaCountCache cache = new ZoomaCountCache(folder.getRoot(), HOUR, false);
+        assertEquals("first", read(cache.open(query)));
+        response = "second";
+        etag = "\"2\"";
+        assertEquals("first", read(cache.open(query)));
+        assertEquals(1, requests);
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws IOException {
+        ZoomaCountCache cache = new ZoomaCountCache(folder.getRoot(), 0, false);
+        assertEquals("first", read(cache.open(query)));
+        assertNull(lastIfNoneMatch);
+        assertEquals("first", read(cache.open(query)));
+        assertEquals("\"1\"", lastIfNoneMatch);
+        assertEquals(2, requests);
+
+        // once revalidated, the response is fresh again
+        cache = new ZoomaCountCache(folder.getRoot(), HOUR, false);
+        assertEquals("first", read(cache.open(query)));
+        assertEquals(2, requests);
+    }
+
+    @Test
+    public void testStaleResponseIsReplaced() throws IOException {
+        ZoomaCountCache cache = new ZoomaCountCache(folder.getRoot(), 0, false);
+        assertEquals("first", read(cache.open(query)));
+        response = "second";
+        etag = "\"2\"";
+        assertEquals("second", read(cache.open(query)));
+        assertEquals("\"1\"", lastIfNoneMatch);
+
+        // and the new ETag is used next time
+        assertEquals("second", read(cache.open(query)));
+        assertEquals("\"2\"", lastIfNoneMatch);
+        assertEquals(3, requests);
+    }
+
+    @Test
+    public void testStaleResponseIsUsedWhenUnreachable() throws IOException {
+        ZoomaCountCache cache = new ZoomaCountCache(folder.getRoot(), 0, false);
+        assertEquals("first", read(cache.open(query)));
+        server.stop(0);
+        server = null;
+        assertEquals("first", read(cache.open(query)));
+    }
+
+    @Test
+    public void testOfflineUsesCachedResponse() throws IOException {
+        assertEquals("first", read(new ZoomaCountCache(folder.getRoot(), 0, false).open(query)));
+        assertEquals("first", read(new ZoomaCountCache(folder.getRoot(), 0, true).open(query)));
+        assertEquals(1, requests);
+    }
+
+    @Test
+    public void testOfflineMissFails() throws IOException {
+        ZoomaCountCache cache = new ZoomaCountCache(folder.getRoot(), HOUR, true);
+        try {
+            cache.open(query);
+            fail("Expected an IOException for a query with no cached response");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, requests);
+    }
+
+    @Test
+    public void testCorruptEntryIsFetchedAgain() throws IOException {
+        ZoomaCountCache cache = new ZoomaCountCache(folder.getRoot(), HOUR, false);
+        assertEquals("first", read(cache.open(query)));
+        File[] entries = folder.getRoot().listFiles();
+        assertEquals(1, entries.length);
+        try (OutputStream out = new FileOutputStream(entries[0])) {
+            out.write("garbage".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals("first", read(cache.open(query)));
+        assertNull(lastIfNoneMatch);
+        assertEquals(2, requests);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+        finally {
+            in.close();
+        }
+    }
+}